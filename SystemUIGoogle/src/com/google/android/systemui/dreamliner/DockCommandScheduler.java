@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.systemui.Dumpable;
+import com.android.systemui.dagger.SysUISingleton;
+import com.android.systemui.dagger.qualifiers.Background;
+import com.android.systemui.dump.DumpManager;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+
+/**
+ * Orders the commands DockObserver sends to the dock.
+ *
+ * Commands run one at a time, highest priority first and in submission order within a priority,
+ * so a queued fan query can no longer hold up a presence check or an authentication step. A
+ * command that is submitted while an identical one (same type and key) is still queued shares the
+ * queued command's result instead of being sent again.
+ */
+@SysUISingleton
+public class DockCommandScheduler implements Dumpable {
+    private static final String TAG = "DLObserver";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    static final int CMD_IS_DOCK_PRESENT = 0;
+    static final int CMD_CHALLENGE = 1;
+    static final int CMD_KEY_EXCHANGE = 2;
+    static final int CMD_GET_WPC_CHALLENGE_RESPONSE = 3;
+    static final int CMD_GET_DOCK_INFO = 4;
+    static final int CMD_GET_WPC_DIGESTS = 5;
+    static final int CMD_GET_WPC_CERTIFICATE = 6;
+    static final int CMD_GET_FEATURES = 7;
+    static final int CMD_SET_FEATURES = 8;
+    static final int CMD_SET_FAN = 9;
+    static final int CMD_GET_FAN_LEVEL = 10;
+    static final int CMD_GET_FAN_INFO = 11;
+    static final int CMD_GET_FAN_SIMPLE_INFO = 12;
+    private static final int CMD_COUNT = 13;
+
+    private static final String[] COMMAND_NAMES = {
+            "IsDockPresent", "Challenge", "KeyExchange", "GetWpcChallengeResponse", "GetDockInfo",
+            "GetWpcDigests", "GetWpcCertificate", "GetFeatures", "SetFeatures", "SetFan",
+            "GetFanLevel", "GetFanInfo", "GetFanSimpleInfo",
+    };
+
+    // Lower runs first.
+    private static final int[] PRIORITIES = {
+            0, // IsDockPresent
+            1, // Challenge
+            1, // KeyExchange
+            1, // GetWpcChallengeResponse
+            2, // GetDockInfo
+            2, // GetWpcDigests
+            2, // GetWpcCertificate
+            3, // GetFeatures
+            3, // SetFeatures
+            3, // SetFan
+            4, // GetFanLevel
+            4, // GetFanInfo
+            4, // GetFanSimpleInfo
+    };
+
+    @VisibleForTesting
+    static final int LATENCY_SAMPLES = 64;
+
+    private final Executor mBackgroundExecutor;
+
+    @GuardedBy("this")
+    private final PriorityQueue<Command<?>> mQueue = new PriorityQueue<>();
+    @GuardedBy("this")
+    private Command<?> mRunning;
+    @GuardedBy("this")
+    private long mSequence;
+    @GuardedBy("this")
+    private int mMaxQueueDepth;
+    @GuardedBy("this")
+    private int mCollapsed;
+    @GuardedBy("this")
+    private int mCancelled;
+    @GuardedBy("this")
+    private final LatencyStats[] mLatencies = new LatencyStats[CMD_COUNT];
+
+    @Inject
+    public DockCommandScheduler(@Background Executor backgroundExecutor, DumpManager dumpManager) {
+        mBackgroundExecutor = backgroundExecutor;
+        for (int i = 0; i < CMD_COUNT; i++) {
+            mLatencies[i] = new LatencyStats();
+        }
+        dumpManager.registerDumpable(DockCommandScheduler.class.getName(), this);
+    }
+
+    /**
+     * Queues a command. {@code key} identifies the command's arguments for de-duplication; pass
+     * null for commands that must never be collapsed. The returned future completes with the
+     * command's result, or is cancelled if {@link #cancelAll()} runs first.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> submit(int type, Object key, Supplier<CompletableFuture<T>> action) {
+        synchronized (this) {
+            if (key != null) {
+                for (Command<?> queued : mQueue) {
+                    if (queued.type == type && key.equals(queued.key)) {
+                        mCollapsed++;
+                        return ((Command<T>) queued).result;
+                    }
+                }
+            }
+            Command<T> command = new Command<>(type, key, action, mSequence++);
+            mQueue.add(command);
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueue.size());
+            if (mRunning == null) {
+                mBackgroundExecutor.execute(this::runNext);
+            }
+            return command.result;
+        }
+    }
+
+    /** Cancels every queued command and the one in flight, e.g. when the dock goes away. */
+    void cancelAll() {
+        ArrayList<Command<?>> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(mQueue);
+            mQueue.clear();
+            if (mRunning != null) {
+                cancelled.add(mRunning);
+            }
+            mCancelled += cancelled.size();
+        }
+        for (Command<?> command : cancelled) {
+            command.cancel();
+        }
+    }
+
+    private void runNext() {
+        Command<?> command;
+        synchronized (this) {
+            if (mRunning != null) {
+                return;
+            }
+            command = mQueue.poll();
+            if (command == null) {
+                return;
+            }
+            mRunning = command;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "run " + COMMAND_NAMES[command.type]);
+        }
+        command.start(() -> onFinished(command));
+    }
+
+    private void onFinished(Command<?> command) {
+        synchronized (this) {
+            if (mRunning == command) {
+                mRunning = null;
+            }
+            mLatencies[command.type].add(SystemClock.elapsedRealtime() - command.submitTimeMs);
+        }
+        mBackgroundExecutor.execute(this::runNext);
+    }
+
+    @Override
+    public synchronized void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("DockCommandScheduler:");
+        pw.println("  queueDepth=" + mQueue.size() + ", maxQueueDepth=" + mMaxQueueDepth
+                + ", running=" + (mRunning != null ? COMMAND_NAMES[mRunning.type] : "none"));
+        pw.println("  collapsed=" + mCollapsed + ", cancelled=" + mCancelled);
+        pw.println("  latencyMs (p50/p90/p99, count):");
+        for (int i = 0; i < CMD_COUNT; i++) {
+            LatencyStats stats = mLatencies[i];
+            if (stats.mCount == 0) {
+                continue;
+            }
+            pw.println("    " + COMMAND_NAMES[i] + ": " + stats.percentile(50) + "/"
+                    + stats.percentile(90) + "/" + stats.percentile(99) + ", " + stats.mCount);
+        }
+    }
+
+    private static final class Command<T> implements Comparable<Command<?>> {
+        final int type;
+        final Object key;
+        final long sequence;
+        final long submitTimeMs = SystemClock.elapsedRealtime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Supplier<CompletableFuture<T>> mAction;
+        private CompletableFuture<T> mInFlight;
+
+        Command(int type, Object key, Supplier<CompletableFuture<T>> action, long sequence) {
+            this.type = type;
+            this.key = key;
+            this.sequence = sequence;
+            mAction = action;
+        }
+
+        void start(Runnable onFinished) {
+            CompletableFuture<T> inFlight;
+            try {
+                inFlight = Objects.requireNonNull(mAction.get());
+            } catch (RuntimeException e) {
+                inFlight = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                mInFlight = inFlight;
+            }
+            inFlight.whenComplete((value, t) -> {
+                if (t == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(t);
+                }
+                onFinished.run();
+            });
+        }
+
+        void cancel() {
+            result.completeExceptionally(new CancellationException("dock command cancelled"));
+            synchronized (this) {
+                if (mInFlight != null) {
+                    mInFlight.cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Command<?> other) {
+            int byPriority = Integer.compare(PRIORITIES[type], PRIORITIES[other.type]);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /** Keeps the most recent {@link #LATENCY_SAMPLES} latencies of one command type. */
+    private static final class LatencyStats {
+        private final long[] mSamples = new long[LATENCY_SAMPLES];
+        private int mCount;
+
+        void add(long latencyMs) {
+            mSamples[mCount % LATENCY_SAMPLES] = latencyMs;
+            mCount++;
+        }
+
+        long percentile(int percent) {
+            int size = Math.min(mCount, LATENCY_SAMPLES);
+            long[] sorted = Arrays.copyOf(mSamples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (size * percent) / 100)];
+        }
+    }
+}
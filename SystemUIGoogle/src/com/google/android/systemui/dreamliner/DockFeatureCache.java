@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Write-through cache of the 64-bit dock feature mask per charger id.
+ *
+ * Reads are answered from memory once a mask is known, and writes of the mask that is already in
+ * effect never reach the HAL. The owner must {@link #clear()} the cache whenever the dock or the
+ * HAL may have changed underneath it.
+ */
+class DockFeatureCache {
+    private final WirelessCharger mWirelessCharger;
+
+    @GuardedBy("this")
+    private final HashMap<Long, Long> mFeatures = new HashMap<>();
+    // Bumped by clear() so that HAL results from before the clear are not cached.
+    @GuardedBy("this")
+    private int mGeneration;
+    @GuardedBy("this")
+    private int mReadHits;
+    @GuardedBy("this")
+    private int mReadMisses;
+    @GuardedBy("this")
+    private int mWritesSkipped;
+    @GuardedBy("this")
+    private int mWrites;
+
+    DockFeatureCache(WirelessCharger wirelessCharger) {
+        mWirelessCharger = wirelessCharger;
+    }
+
+    CompletableFuture<Long> getFeatures(long chargerId) {
+        int generation;
+        synchronized (this) {
+            Long cached = mFeatures.get(chargerId);
+            if (cached != null) {
+                mReadHits++;
+                return CompletableFuture.completedFuture(cached);
+            }
+            mReadMisses++;
+            generation = mGeneration;
+        }
+        return mWirelessCharger.getFeaturesAsync(chargerId).whenComplete((features, t) -> {
+            if (t == null) {
+                put(generation, chargerId, features);
+            }
+        });
+    }
+
+    CompletableFuture<Void> setFeatures(long chargerId, long features) {
+        int generation;
+        synchronized (this) {
+            Long cached = mFeatures.get(chargerId);
+            if (cached != null && cached == features) {
+                mWritesSkipped++;
+                return CompletableFuture.completedFuture(null);
+            }
+            mWrites++;
+            // The mask is unknown until the HAL confirms the write.
+            mFeatures.remove(chargerId);
+            generation = mGeneration;
+        }
+        return mWirelessCharger.setFeaturesAsync(chargerId, features).whenComplete((unused, t) -> {
+            if (t == null) {
+                put(generation, chargerId, features);
+            }
+        });
+    }
+
+    synchronized void clear() {
+        mFeatures.clear();
+        mGeneration++;
+    }
+
+    private synchronized void put(int generation, long chargerId, long features) {
+        if (generation == mGeneration) {
+            mFeatures.put(chargerId, features);
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("  DockFeatureCache:");
+        pw.println("    entries=" + mFeatures.size());
+        pw.println("    readHits=" + mReadHits + ", readMisses=" + mReadMisses
+                + ", writes=" + mWrites + ", writesSkipped=" + mWritesSkipped);
+    }
+}
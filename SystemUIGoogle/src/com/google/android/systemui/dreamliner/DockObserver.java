@@ -46,11 +46,15 @@ import android.widget.ImageView;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.systemui.Dependency;
+import com.android.systemui.Dumpable;
+import com.android.systemui.dagger.qualifiers.Background;
 import com.android.systemui.dagger.qualifiers.Main;
 import com.android.systemui.dagger.SysUISingleton;
 import com.android.systemui.dock.DockManager;
 import com.android.systemui.dock.DockManagerImpl;
+import com.android.systemui.dump.DumpManager;
 import com.android.systemui.plugins.statusbar.StatusBarStateController;
+import com.android.systemui.res.R;
 import com.android.systemui.settings.UserTracker;
 import com.android.systemui.statusbar.notification.collection.NotificationEntry;
 import com.android.systemui.statusbar.notification.interruption.VisualInterruptionCondition;
@@ -66,17 +70,19 @@ import com.google.android.systemui.elmyra.gates.KeyguardVisibility;
 
 import dagger.Lazy;
 
+import java.io.PrintWriter;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.Set;
 
 import javax.inject.Inject;
 
 @SysUISingleton
-public class DockObserver extends DockManagerImpl {
+public class DockObserver extends DockManagerImpl implements Dumpable {
     @VisibleForTesting
     static final String ACTION_ALIGN_STATE_CHANGE = "com.google.android.systemui.dreamliner.ALIGNMENT_CHANGE";
     @VisibleForTesting
@@ -112,8 +118,6 @@ public class DockObserver extends DockManagerImpl {
     @VisibleForTesting
     static final int RESULT_OK = 0;
     private static final boolean DEBUG = Log.isLoggable("DLObserver", 3);
-    @VisibleForTesting
-    static volatile ExecutorService mSingleThreadExecutor;
     private static boolean sIsDockingUiShowing;
     @VisibleForTesting
     final DreamlinerBroadcastReceiver mDreamlinerReceiver = new DreamlinerBroadcastReceiver();
@@ -125,6 +129,7 @@ public class DockObserver extends DockManagerImpl {
     private final Context mContext;
     private final DockAlignmentController mDockAlignmentController;
     private final DelayableExecutor mMainExecutor;
+    private final DockCommandScheduler mCommandScheduler;
     private final StatusBarStateController mStatusBarStateController;
     private final WirelessCharger mWirelessCharger;
     @VisibleForTesting
@@ -139,7 +144,11 @@ public class DockObserver extends DockManagerImpl {
     private ImageView mDreamlinerGear;
     private Runnable mPhotoAction;
     private FrameLayout mPhotoPreview;
-    private int mFanLevel = -1;
+    private final FanLevelPipeline mFanLevelPipeline;
+    private final FanTelemetry mFanTelemetry;
+    private final WpcCertificateCache mWpcCertificateCache;
+    private final DockFeatureCache mDockFeatureCache;
+    private volatile int mDockId;
 
     private final Handler mMainHandler;
     private final UserTracker mUserTracker;
@@ -165,6 +174,9 @@ public class DockObserver extends DockManagerImpl {
             String action = intent.getAction();
             switch (action) {
                 case "android.intent.action.ACTION_POWER_DISCONNECTED":
+                    if (mWirelessCharger != null) {
+                        mWirelessCharger.cancelIsDockPresent();
+                    }
                     stopDreamlinerService(context);
                     sIsDockingUiShowing = false;
                     break;
@@ -192,7 +204,10 @@ public class DockObserver extends DockManagerImpl {
         Lazy<VisualInterruptionDecisionProvider> visualInterruptionDecisionProviderLazy,
         ConfigurationController configurationController,
         @Main DelayableExecutor delayableExecutor,
-        @NonNull UserTracker userTracker, @Main Handler mainHandler
+        @NonNull UserTracker userTracker, @Main Handler mainHandler,
+        @Background DelayableExecutor backgroundExecutor,
+        DumpManager dumpManager,
+        DockCommandScheduler commandScheduler
     ) {
         mInterruptSuppressor =
             new NotificationInterruptSuppressor() {
@@ -208,6 +223,7 @@ public class DockObserver extends DockManagerImpl {
             };
         mVisualInterruptionDecisionProviderLazy = visualInterruptionDecisionProviderLazy;
         mMainExecutor = delayableExecutor;
+        mCommandScheduler = commandScheduler;
         mContext = context;
         mClients = new ArrayList();
         mAlignmentStateListeners = new ArrayList();
@@ -219,9 +235,20 @@ public class DockObserver extends DockManagerImpl {
         context.registerReceiver(stateReceiver, getDockIntentFilter(), PERMISSION_WIRELESS_CHARGER_STATUS, null, 2);
         mDockAlignmentController = new DockAlignmentController(wirelessCharger, this);
         mConfigurationController = configurationController;
-        refreshFanLevel(null);
+        mFanLevelPipeline = new FanLevelPipeline(wirelessCharger, commandScheduler, backgroundExecutor,
+                context.getResources().getInteger(R.integer.config_dock_fan_level_ttl_ms),
+                this::notifyDreamlinerFanLevelChanged);
+        mFanLevelPipeline.requestUpdate(false);
+        mFanTelemetry = new FanTelemetry(wirelessCharger, commandScheduler, backgroundExecutor,
+                context.getResources().getInteger(R.integer.config_dock_fan_telemetry_interval_ms));
+        mWpcCertificateCache = new WpcCertificateCache(context.getFilesDir(), backgroundExecutor);
+        mDockFeatureCache = new DockFeatureCache(wirelessCharger);
+        if (wirelessCharger != null) {
+            wirelessCharger.registerServiceDiedListener(this::onWirelessChargerDied);
+        }
         mUserTracker = userTracker;
         mMainHandler = mainHandler;
+        dumpManager.registerDumpable(DockObserver.class.getName(), this);
     }
 
     private final VisualInterruptionCondition mDockModeCondition =
@@ -249,13 +276,6 @@ public class DockObserver extends DockManagerImpl {
         }
     }
 
-    private static void runOnBackgroundThread(Runnable runnable) {
-        if (mSingleThreadExecutor == null) {
-            mSingleThreadExecutor = Executors.newSingleThreadExecutor();
-        }
-        mSingleThreadExecutor.execute(runnable);
-    }
-
     public static boolean isDockingUiShowing() {
         return sIsDockingUiShowing;
     }
@@ -355,11 +375,15 @@ public class DockObserver extends DockManagerImpl {
         if (mIndicationController != null) {
             mIndicationController.setDocking(isDocked());
         }
+        if (i == 0) {
+            mFanTelemetry.stop();
+        }
         if (i2 != 0 || i != 1) {
             return;
         }
         notifyDreamlinerAlignStateChanged(mLastAlignState);
-        onFanLevelChange();
+        mFanLevelPipeline.requestUpdate(true);
+        mFanTelemetry.start();
     }
 
     void onAlignStateChanged(int i) {
@@ -380,34 +404,21 @@ public class DockObserver extends DockManagerImpl {
         }
     }
 
-    private void refreshFanLevel(final Runnable runnable) {
-        Log.d("DLObserver", "command=2");
-        runOnBackgroundThread(() -> {
-            if (mWirelessCharger == null) {
-                Log.i("DLObserver", "hint is UNKNOWN for null wireless charger HAL");
-                mFanLevel = -1;
-            } else {
-                long currentTimeMillis = System.currentTimeMillis();
-                mFanLevel = mWirelessCharger.getFanLevel();
-                if (DEBUG) {
-                    Log.d("DLObserver", "command=2, l=" + mFanLevel + ", spending time=" + (System.currentTimeMillis() - currentTimeMillis));
-                }
-            }
-            if (runnable != null) {
-                runnable.run();
-            }
-        });
+    void onFanLevelChange() {
+        mFanLevelPipeline.requestUpdate(false);
     }
 
-    void onFanLevelChange() {
-        refreshFanLevel(() -> {
-            Log.d("DLObserver", "notify l=" + mFanLevel + ", isDocked=" + isDocked());
-            if (isDocked()) {
-                mContext.sendBroadcastAsUser(new Intent("com.google.android.systemui.dreamliner.ACTION_UPDATE_FAN_LEVEL").putExtra("fan_level", mFanLevel).addFlags(1073741824), UserHandle.CURRENT);
-            }
-        });
+    private boolean notifyDreamlinerFanLevelChanged(int level) {
+        Log.d("DLObserver", "notify l=" + level + ", isDocked=" + isDocked());
+        if (!isDocked()) {
+            return false;
+        }
+        mContext.sendBroadcastAsUser(new Intent("com.google.android.systemui.dreamliner.ACTION_UPDATE_FAN_LEVEL").putExtra("fan_level", level).addFlags(1073741824), UserHandle.CURRENT);
+        return true;
     }
 
+    // Reads the sticky intent rather than BatteryStateHub: on ACTION_POWER_CONNECTED the hub,
+    // which updates on the background handler, may not have seen the plug yet.
     private boolean isWirelessCharging(Context context) {
         Intent registerReceiver = context.registerReceiver(null, new IntentFilter("android.intent.action.BATTERY_CHANGED"));
         if (registerReceiver == null) {
@@ -436,7 +447,11 @@ public class DockObserver extends DockManagerImpl {
         if (mWirelessCharger == null || !isWirelessCharging(context)) {
             return;
         }
-        runOnBackgroundThread(new IsDockPresent(context));
+        mCommandScheduler.submit(DockCommandScheduler.CMD_IS_DOCK_PRESENT, "isDockPresent", () -> {
+            mWirelessCharger.asyncIsDockPresent(new IsDockPresentCallback(context));
+            // Presence polling runs on the HAL thread by itself; don't hold up the queue for it.
+            return CompletableFuture.completedFuture(null);
+        });
     }
 
     private void getFeatures(Intent intent) {
@@ -449,7 +464,7 @@ public class DockObserver extends DockManagerImpl {
             if (longExtra == -1) {
                 resultReceiver.send(1, null);
             } else {
-                runOnBackgroundThread(new GetFeatures(resultReceiver, longExtra));
+                getFeatures(resultReceiver, longExtra);
             }
         }
     }
@@ -465,11 +480,37 @@ public class DockObserver extends DockManagerImpl {
             if (longExtra == -1 || longExtra2 == -1) {
                 resultReceiver.send(1, null);
             } else {
-                runOnBackgroundThread(new SetFeatures(resultReceiver, longExtra, longExtra2));
+                setFeatures(resultReceiver, longExtra, longExtra2);
             }
         }
     }
 
+    private void getFeatures(ResultReceiver resultReceiver, long chargerId) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetFeaturesCallback callback = new GetFeaturesCallback(resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_FEATURES, chargerId,
+                () -> mDockFeatureCache.getFeatures(chargerId)).whenComplete(
+                (features, t) -> callback.onCallback(statusOf(t), features != null ? features : 0L));
+    }
+
+    private void setFeatures(ResultReceiver resultReceiver, long chargerId, long features) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        mCommandScheduler.submit(DockCommandScheduler.CMD_SET_FEATURES, null,
+                () -> mDockFeatureCache.setFeatures(chargerId, features)).whenComplete((unused, t) -> {
+            int status = statusOf(t);
+            resultReceiver.send(status < 0 ? RESULT_NOT_FOUND : status, null);
+        });
+    }
+
+    private void onWirelessChargerDied() {
+        mDockFeatureCache.clear();
+        mFanLevelPipeline.invalidate();
+    }
+
     private IntentFilter getDockIntentFilter() {
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction("android.intent.action.ACTION_POWER_CONNECTED");
@@ -515,6 +556,11 @@ public class DockObserver extends DockManagerImpl {
         notifyForceEnabledAmbientDisplay(false);
         onDockStateChanged(0);
         removeInterruptionSuppressor();
+        mFanLevelPipeline.invalidate();
+        mCommandScheduler.cancelAll();
+        mDockId = 0;
+        mWpcCertificateCache.onUndocked();
+        mDockFeatureCache.clear();
         try {
             if (mDreamlinerServiceConn == null) {
                 return;
@@ -584,7 +630,7 @@ public class DockObserver extends DockManagerImpl {
         if (byteArrayExtra == null || byteArrayExtra.length <= 0) {
             resultReceiver.send(1, null);
         } else {
-            runOnBackgroundThread(new KeyExchangeWithDock(resultReceiver, byteArrayExtra));
+            keyExchangeWithDock(resultReceiver, byteArrayExtra);
         }
     }
 
@@ -601,8 +647,145 @@ public class DockObserver extends DockManagerImpl {
         if (byteArrayExtra == null || byteArrayExtra.length <= 0 || byteExtra < 0) {
             resultReceiver.send(1, null);
         } else {
-            runOnBackgroundThread(new ChallengeWithDock(resultReceiver, byteExtra, byteArrayExtra));
+            challengeWithDock(resultReceiver, byteExtra, byteArrayExtra);
+        }
+    }
+
+    private void getDockInfo(ResultReceiver resultReceiver) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetInformationCallback callback = new GetInformationCallback(resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_DOCK_INFO, "dockInfo",
+                mWirelessCharger::getInformationAsync).whenComplete(
+                (dockInfo, t) -> callback.onCallback(statusOf(t), dockInfo));
+    }
+
+    private void keyExchangeWithDock(ResultReceiver resultReceiver, byte[] publicKey) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        KeyExchangeCallback callback = new KeyExchangeCallback(resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_KEY_EXCHANGE, null,
+                () -> mWirelessCharger.keyExchangeAsync(publicKey)).whenComplete((result, t) -> {
+            if (result == null) {
+                callback.onResult(statusOf(t), (byte) -1, null);
+            } else {
+                callback.onResult(RESULT_OK, result.dockId, result.dockPublicKey);
+            }
+        });
+    }
+
+    private void challengeWithDock(ResultReceiver resultReceiver, byte dockId, byte[] challengeData) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        ChallengeCallback callback = new ChallengeCallback(resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_CHALLENGE, null,
+                () -> mWirelessCharger.challengeAsync(dockId, challengeData)).whenComplete(
+                (response, t) -> callback.onResult(statusOf(t), response));
+    }
+
+    private void getWpcAuthDigests(ResultReceiver resultReceiver, byte slotMask) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetWpcAuthDigestsCallback callback = new GetWpcAuthDigestsCallback(resultReceiver);
+        int dockId = mDockId;
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_WPC_DIGESTS, slotMask,
+                () -> mWirelessCharger.getWpcAuthDigestsAsync(slotMask)).whenComplete((result, t) -> {
+            if (result == null) {
+                callback.onCallback(statusOf(t), (byte) 0, (byte) 0, null);
+            } else {
+                mWpcCertificateCache.onDigests(dockId, result.slotReturnedMask, result.digests);
+                callback.onCallback(RESULT_OK, result.slotPopulatedMask, result.slotReturnedMask, result.digests);
+            }
+        });
+    }
+
+    private void getWpcAuthCertificate(ResultReceiver resultReceiver, byte slot, short offset, short length) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetWpcAuthCertificateCallback callback = new GetWpcAuthCertificateCallback(resultReceiver);
+        int dockId = mDockId;
+        byte[] cached = mWpcCertificateCache.getChunk(dockId, slot, offset, length);
+        if (cached != null) {
+            callback.onResult(RESULT_OK, cached);
+            return;
         }
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_WPC_CERTIFICATE,
+                Arrays.asList(slot, offset, length),
+                () -> mWirelessCharger.getWpcAuthCertificateAsync(slot, offset, length)).whenComplete((certificate, t) -> {
+            if (t == null) {
+                mWpcCertificateCache.onChunk(dockId, slot, offset, certificate);
+            }
+            callback.onResult(statusOf(t), certificate);
+        });
+    }
+
+    private void getWpcAuthChallengeResponse(ResultReceiver resultReceiver, byte slot, byte[] nonce) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetWpcAuthChallengeResponseCallback callback = new GetWpcAuthChallengeResponseCallback(resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_WPC_CHALLENGE_RESPONSE, null,
+                () -> mWirelessCharger.getWpcAuthChallengeResponseAsync(slot, nonce)).whenComplete((result, t) -> {
+            if (result == null) {
+                callback.onResult(statusOf(t), (byte) 0, (byte) 0, (byte) 0, null, null);
+            } else {
+                callback.onResult(RESULT_OK, result.maxProtocolVersion, result.slotPopulatedMask,
+                        result.certificateLsb, result.signatureR, result.signatureS);
+            }
+        });
+    }
+
+    private void getFanSimpleInformation(byte fanId, ResultReceiver resultReceiver) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetFanSimpleInformationCallback callback = new GetFanSimpleInformationCallback(fanId, resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_FAN_SIMPLE_INFO, fanId,
+                () -> mWirelessCharger.getFanSimpleInformationAsync(fanId)).whenComplete((bundle, t) -> {
+            callback.onCallback(statusOf(t), bundle);
+        });
+    }
+
+    private void getFanInformation(byte fanId, ResultReceiver resultReceiver) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        GetFanInformationCallback callback = new GetFanInformationCallback(fanId, resultReceiver);
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_FAN_INFO, fanId,
+                () -> mWirelessCharger.getFanInformationAsync(fanId)).whenComplete((bundle, t) -> {
+            callback.onCallback(statusOf(t), bundle);
+        });
+    }
+
+    private void setFan(byte fanId, byte fanMode, int fanRpm) {
+        if (mWirelessCharger == null) {
+            return;
+        }
+        SetFanCallback callback = new SetFanCallback();
+        mCommandScheduler.submit(DockCommandScheduler.CMD_SET_FAN, null,
+                () -> mWirelessCharger.setFanAsync(fanId, fanMode, fanRpm)).whenComplete((bundle, t) -> {
+            if (t == null) {
+                callback.onCallback(RESULT_OK, bundle);
+            }
+        });
+    }
+
+    /** Maps the outcome of an async HAL call onto the status code the callbacks expect. */
+    private static int statusOf(Throwable t) {
+        if (t == null) {
+            return RESULT_OK;
+        }
+        Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+        if (cause instanceof WirelessChargerException) {
+            return ((WirelessChargerException) cause).getStatus();
+        }
+        Log.w("DLObserver", "dock command failed: " + cause);
+        return -1;
     }
 
     private void configPhotoAction(Intent intent) {
@@ -637,7 +820,7 @@ public class DockObserver extends DockManagerImpl {
         }
     }
 
-    private byte[] convertArrayListToPrimitiveArray(ArrayList<Byte> arrayList) {
+    private static byte[] convertArrayListToPrimitiveArray(ArrayList<Byte> arrayList) {
         if (arrayList == null || arrayList.isEmpty()) {
             return null;
         }
@@ -649,24 +832,22 @@ public class DockObserver extends DockManagerImpl {
         return bArr;
     }
 
-    private Bundle createKeyExchangeResponseBundle(byte b, ArrayList<Byte> arrayList) {
-        if (arrayList == null || arrayList.isEmpty()) {
+    private Bundle createKeyExchangeResponseBundle(byte b, byte[] bArr) {
+        if (bArr == null || bArr.length == 0) {
             return null;
         }
-        byte[] convertArrayListToPrimitiveArray = convertArrayListToPrimitiveArray(arrayList);
         Bundle bundle = new Bundle();
         bundle.putByte("dock_id", b);
-        bundle.putByteArray("dock_public_key", convertArrayListToPrimitiveArray);
+        bundle.putByteArray("dock_public_key", bArr);
         return bundle;
     }
 
-    private Bundle createChallengeResponseBundle(ArrayList<Byte> arrayList) {
-        if (arrayList == null || arrayList.isEmpty()) {
+    private Bundle createChallengeResponseBundle(byte[] bArr) {
+        if (bArr == null || bArr.length == 0) {
             return null;
         }
-        byte[] convertArrayListToPrimitiveArray = convertArrayListToPrimitiveArray(arrayList);
         Bundle bundle = new Bundle();
-        bundle.putByteArray("challenge_response", convertArrayListToPrimitiveArray);
+        bundle.putByteArray("challenge_response", bArr);
         return bundle;
     }
 
@@ -686,26 +867,36 @@ public class DockObserver extends DockManagerImpl {
         return bundle;
     }
 
-    private Bundle createWpcAuthCertificateResponseBundle(ArrayList<Byte> arrayList) {
-        if (arrayList == null || arrayList.isEmpty()) {
+    private Bundle createWpcAuthCertificateResponseBundle(byte[] bArr) {
+        if (bArr == null || bArr.length == 0) {
             return null;
         }
-        byte[] convertArrayListToPrimitiveArray = convertArrayListToPrimitiveArray(arrayList);
         Bundle bundle = new Bundle();
-        bundle.putByteArray("wpc_cert", convertArrayListToPrimitiveArray);
+        bundle.putByteArray("wpc_cert", bArr);
         return bundle;
     }
 
-    private Bundle createWpcAuthChallengeResponseBundle(byte b, byte b2, byte b3, ArrayList<Byte> arrayList, ArrayList<Byte> arrayList2) {
+    private Bundle createWpcAuthChallengeResponseBundle(byte b, byte b2, byte b3, byte[] bArr, byte[] bArr2) {
         Bundle bundle = new Bundle();
         bundle.putByte("max_protocol_ver", b);
         bundle.putByte("slot_populated_mask", b2);
         bundle.putByte("cert_lsb", b3);
-        bundle.putByteArray("signature_r", convertArrayListToPrimitiveArray(arrayList));
-        bundle.putByteArray("signature_s", convertArrayListToPrimitiveArray(arrayList2));
+        bundle.putByteArray("signature_r", bArr != null && bArr.length > 0 ? bArr : null);
+        bundle.putByteArray("signature_s", bArr2 != null && bArr2.length > 0 ? bArr2 : null);
         return bundle;
     }
 
+    @Override
+    public void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("DockObserver:");
+        pw.println("  dockState=" + mDockState + ", lastAlignState=" + mLastAlignState
+                + ", dockingUiShowing=" + sIsDockingUiShowing);
+        mFanLevelPipeline.dump(pw);
+        mFanTelemetry.dump(pw);
+        mWpcCertificateCache.dump(pw);
+        mDockFeatureCache.dump(pw);
+    }
+
     private Bundle createGetFeatureResponse(long j) {
         Bundle bundle = new Bundle();
         bundle.putLong("charger_feature", j);
@@ -777,239 +968,6 @@ public class DockObserver extends DockManagerImpl {
         }
     }
 
-    private class IsDockPresent implements Runnable {
-        final Context context;
-
-        public IsDockPresent(Context context) {
-            this.context = context;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.asyncIsDockPresent(new IsDockPresentCallback(context));
-        }
-    }
-
-    private class GetDockInfo implements Runnable {
-        final Context context;
-        final ResultReceiver resultReceiver;
-
-        public GetDockInfo(ResultReceiver resultReceiver, Context context) {
-            this.resultReceiver = resultReceiver;
-            this.context = context;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.getInformation(new GetInformationCallback(resultReceiver));
-        }
-    }
-
-    private class KeyExchangeWithDock implements Runnable {
-        final byte[] publicKey;
-        final ResultReceiver resultReceiver;
-
-        public KeyExchangeWithDock(ResultReceiver resultReceiver, byte[] bArr) {
-            publicKey = bArr;
-            this.resultReceiver = resultReceiver;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.keyExchange(publicKey, new KeyExchangeCallback(resultReceiver));
-        }
-    }
-
-    private class GetFanSimpleInformation implements Runnable {
-        final byte mFanId;
-        final ResultReceiver mResultReceiver;
-
-        GetFanSimpleInformation(byte b, ResultReceiver resultReceiver) {
-            mFanId = b;
-            mResultReceiver = resultReceiver;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            byte b = mFanId;
-            mWirelessCharger.getFanSimpleInformation(b, new GetFanSimpleInformationCallback(b, mResultReceiver));
-        }
-    }
-
-    private class GetFanInformation implements Runnable {
-        final byte mFanId;
-        final ResultReceiver mResultReceiver;
-
-        public GetFanInformation(byte b, ResultReceiver resultReceiver) {
-            mFanId = b;
-            mResultReceiver = resultReceiver;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            byte b = mFanId;
-            mWirelessCharger.getFanInformation(b, new GetFanInformationCallback(b, mResultReceiver));
-        }
-    }
-
-    private class SetFan implements Runnable {
-        final byte mFanId;
-        final byte mFanMode;
-        final int mFanRpm;
-
-        public SetFan(byte b, byte b2, int i) {
-            mFanId = b;
-            mFanMode = b2;
-            mFanRpm = i;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.setFan(mFanId, mFanMode, mFanRpm, new SetFanCallback());
-        }
-    }
-
-    private class ChallengeWithDock implements Runnable {
-        final byte[] challengeData;
-        final byte dockId;
-        final ResultReceiver resultReceiver;
-
-        public ChallengeWithDock(ResultReceiver resultReceiver, byte b, byte[] bArr) {
-            dockId = b;
-            challengeData = bArr;
-            this.resultReceiver = resultReceiver;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.challenge(dockId, challengeData, new ChallengeCallback(resultReceiver));
-        }
-    }
-
-    private class GetWpcAuthDigests implements Runnable {
-        final ResultReceiver mResultReceiver;
-        final byte mSlotMask;
-
-        GetWpcAuthDigests(ResultReceiver resultReceiver, byte b) {
-            mResultReceiver = resultReceiver;
-            mSlotMask = b;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.getWpcAuthDigests(mSlotMask, new GetWpcAuthDigestsCallback(mResultReceiver));
-        }
-    }
-
-    private class GetWpcAuthCertificate implements Runnable {
-        final short mLength;
-        final short mOffset;
-        final ResultReceiver mResultReceiver;
-        final byte mSlotNum;
-
-        GetWpcAuthCertificate(ResultReceiver resultReceiver, byte b, short s, short s2) {
-            mResultReceiver = resultReceiver;
-            mSlotNum = b;
-            mOffset = s;
-            mLength = s2;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.getWpcAuthCertificate(mSlotNum, mOffset, mLength, new GetWpcAuthCertificateCallback(mResultReceiver));
-        }
-    }
-
-    private class GetWpcAuthChallengeResponse implements Runnable {
-        final ResultReceiver mResultReceiver;
-        final byte mSlotNum;
-        final byte[] mWpcNonce;
-
-        GetWpcAuthChallengeResponse(ResultReceiver resultReceiver, byte b, byte[] bArr) {
-            mResultReceiver = resultReceiver;
-            mSlotNum = b;
-            mWpcNonce = bArr;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.getWpcAuthChallengeResponse(mSlotNum, mWpcNonce, new GetWpcAuthChallengeResponseCallback(mResultReceiver));
-        }
-    }
-
-    private class SetFeatures implements Runnable {
-        final long mChargerId;
-        final long mFeature;
-        final ResultReceiver mResultReceiver;
-
-        SetFeatures(ResultReceiver resultReceiver, long j, long j2) {
-            mResultReceiver = resultReceiver;
-            mChargerId = j;
-            mFeature = j2;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.setFeatures(mChargerId, mFeature, new WirelessCharger.SetFeaturesCallback() {
-                @Override
-                public void onCallback(int i) {
-                    mResultReceiver.send(i, null);
-                }
-            });
-        }
-    }
-
-    private class GetFeatures implements Runnable {
-        final long mChargerId;
-        final ResultReceiver mResultReceiver;
-
-        GetFeatures(ResultReceiver resultReceiver, long j) {
-            mResultReceiver = resultReceiver;
-            mChargerId = j;
-        }
-
-        @Override
-        public void run() {
-            if (mWirelessCharger == null) {
-                return;
-            }
-            mWirelessCharger.getFeatures(mChargerId, new GetFeaturesCallback(mResultReceiver));
-        }
-    }
-
     @VisibleForTesting
     final class DreamlinerServiceConn implements ServiceConnection {
         final Context mContext;
@@ -1048,6 +1006,7 @@ public class DockObserver extends DockManagerImpl {
                 Log.i("DLObserver", "isDockPresent() docked: " + z + ", id: " + i + ", type: " + ((int) b) + ", orientation: " + ((int) b2) + ", support GetInfo: " + z2);
             }
             if (z) {
+                mDockId = i;
                 addInterruptionSuppressor();
                 startDreamlinerService(mContext, b, b2, i);
             }
@@ -1091,14 +1050,18 @@ public class DockObserver extends DockManagerImpl {
 
         @Override
         public void onCallback(int i, byte b, ArrayList<Byte> arrayList) {
+            onResult(i, b, convertArrayListToPrimitiveArray(arrayList));
+        }
+
+        void onResult(int i, byte b, byte[] bArr) {
             if (DockObserver.DEBUG) {
                 Log.d("DLObserver", "keyExchange() Result: " + i);
             }
             if (i == 0) {
                 if (DockObserver.DEBUG) {
-                    Log.d("DLObserver", "keyExchange() key: " + arrayList);
+                    Log.d("DLObserver", "keyExchange() key: " + Arrays.toString(bArr));
                 }
-                mResultReceiver.send(0, createKeyExchangeResponseBundle(b, arrayList));
+                mResultReceiver.send(0, createKeyExchangeResponseBundle(b, bArr));
                 return;
             }
             mResultReceiver.send(1, null);
@@ -1115,14 +1078,18 @@ public class DockObserver extends DockManagerImpl {
 
         @Override
         public void onCallback(int i, ArrayList<Byte> arrayList) {
+            onResult(i, convertArrayListToPrimitiveArray(arrayList));
+        }
+
+        void onResult(int i, byte[] bArr) {
             if (DockObserver.DEBUG) {
                 Log.d("DLObserver", "challenge() Result: " + i);
             }
             if (i == 0) {
                 if (DockObserver.DEBUG) {
-                    Log.d("DLObserver", "challenge() response: " + arrayList);
+                    Log.d("DLObserver", "challenge() response: " + Arrays.toString(bArr));
                 }
-                mResultReceiver.send(0, createChallengeResponseBundle(arrayList));
+                mResultReceiver.send(0, createChallengeResponseBundle(bArr));
                 return;
             }
             mResultReceiver.send(1, null);
@@ -1163,14 +1130,18 @@ public class DockObserver extends DockManagerImpl {
 
         @Override
         public void onCallback(int i, ArrayList<Byte> arrayList) {
+            onResult(i, convertArrayListToPrimitiveArray(arrayList));
+        }
+
+        void onResult(int i, byte[] bArr) {
             if (DockObserver.DEBUG) {
                 Log.d("DLObserver", "GWAC() result: " + i);
             }
             if (i == 0) {
                 if (DockObserver.DEBUG) {
-                    Log.d("DLObserver", "GWAC() response: c=" + arrayList);
+                    Log.d("DLObserver", "GWAC() response: c=" + Arrays.toString(bArr));
                 }
-                mResultReceiver.send(0, createWpcAuthCertificateResponseBundle(arrayList));
+                mResultReceiver.send(0, createWpcAuthCertificateResponseBundle(bArr));
                 return;
             }
             mResultReceiver.send(1, null);
@@ -1187,14 +1158,18 @@ public class DockObserver extends DockManagerImpl {
 
         @Override
         public void onCallback(int i, byte b, byte b2, byte b3, ArrayList<Byte> arrayList, ArrayList<Byte> arrayList2) {
+            onResult(i, b, b2, b3, convertArrayListToPrimitiveArray(arrayList), convertArrayListToPrimitiveArray(arrayList2));
+        }
+
+        void onResult(int i, byte b, byte b2, byte b3, byte[] bArr, byte[] bArr2) {
             if (DockObserver.DEBUG) {
                 Log.d("DLObserver", "GWACR() result: " + i);
             }
             if (i == 0) {
                 if (DockObserver.DEBUG) {
-                    Log.d("DLObserver", "GWACR() response: mpv=" + ((int) b) + ", pm=" + ((int) b2) + ", chl=" + ((int) b3) + ", rv=" + arrayList + ", sv=" + arrayList2);
+                    Log.d("DLObserver", "GWACR() response: mpv=" + ((int) b) + ", pm=" + ((int) b2) + ", chl=" + ((int) b3) + ", rv=" + Arrays.toString(bArr) + ", sv=" + Arrays.toString(bArr2));
                 }
-                mResultReceiver.send(0, createWpcAuthChallengeResponseBundle(b, b2, b3, arrayList, arrayList2));
+                mResultReceiver.send(0, createWpcAuthChallengeResponseBundle(b, b2, b3, bArr, bArr2));
                 return;
             }
             mResultReceiver.send(1, null);
@@ -1243,7 +1218,7 @@ public class DockObserver extends DockManagerImpl {
             String action = intent.getAction();
             switch (action) {
                 case "com.google.android.systemui.dreamliner.ACTION_GET_FAN_LEVEL":
-                    onFanLevelChange();
+                    mFanLevelPipeline.requestUpdate(true);
                     return;
                 case "com.google.android.systemui.dreamliner.ACTION_SET_FAN":
                     setFan(intent);
@@ -1253,7 +1228,7 @@ public class DockObserver extends DockManagerImpl {
                     if (resultReceiver == null) {
                         return;
                     }
-                    DockObserver.runOnBackgroundThread(new GetDockInfo(resultReceiver, context));
+                    getDockInfo(resultReceiver);
                     return;
                 case DockObserver.ACTION_KEY_EXCHANGE:
                     triggerKeyExchangeWithDock(intent);
@@ -1319,6 +1294,12 @@ public class DockObserver extends DockManagerImpl {
                 case "com.google.android.systemui.dreamliner.ACTION_GET_FAN_INFO":
                     getFanInformation(intent);
                     return;
+                case "com.google.android.systemui.dreamliner.ACTION_GET_FAN_TELEMETRY":
+                    ResultReceiver telemetryReceiver = intent.getParcelableExtra("android.intent.extra.RESULT_RECEIVER");
+                    if (telemetryReceiver != null) {
+                        telemetryReceiver.send(0, mFanTelemetry.export());
+                    }
+                    return;
                 case "com.google.android.systemui.dreamliner.ACTION_GET_WPC_CHALLENGE_RESPONSE":
                     getWpcAuthChallengeResponse(intent);
                     return;
@@ -1336,7 +1317,7 @@ public class DockObserver extends DockManagerImpl {
             }
             ResultReceiver resultReceiver = intent.getParcelableExtra("android.intent.extra.RESULT_RECEIVER");
             if (resultReceiver != null) {
-                DockObserver.runOnBackgroundThread(new GetFanSimpleInformation(intent.getByteExtra("fan_id", (byte) 0), resultReceiver));
+                DockObserver.this.getFanSimpleInformation(intent.getByteExtra("fan_id", (byte) 0), resultReceiver);
             }
         }
 
@@ -1346,7 +1327,7 @@ public class DockObserver extends DockManagerImpl {
             }
             ResultReceiver resultReceiver = intent.getParcelableExtra("android.intent.extra.RESULT_RECEIVER");
             if (resultReceiver != null) {
-                DockObserver.runOnBackgroundThread(new GetFanInformation(intent.getByteExtra("fan_id", (byte) 0), resultReceiver));
+                DockObserver.this.getFanInformation(intent.getByteExtra("fan_id", (byte) 0), resultReceiver);
             }
         }
 
@@ -1358,7 +1339,7 @@ public class DockObserver extends DockManagerImpl {
             byte byteExtra2 = intent.getByteExtra("fan_mode", (byte) 0);
             int intExtra = intent.getIntExtra("fan_rpm", -1);
             if (byteExtra2 != 1 || intExtra != -1) {
-                DockObserver.runOnBackgroundThread(new SetFan(byteExtra, byteExtra2, intExtra));
+                DockObserver.this.setFan(byteExtra, byteExtra2, intExtra);
             } else {
                 Log.e("DLObserver", "Failed to get r.");
             }
@@ -1372,7 +1353,7 @@ public class DockObserver extends DockManagerImpl {
             ResultReceiver resultReceiver = intent.getParcelableExtra("android.intent.extra.RESULT_RECEIVER");
             if (resultReceiver != null) {
                 if (byteExtra != -1) {
-                    DockObserver.runOnBackgroundThread(new GetWpcAuthDigests(resultReceiver, byteExtra));
+                    DockObserver.this.getWpcAuthDigests(resultReceiver, byteExtra);
                 } else {
                     resultReceiver.send(1, null);
                 }
@@ -1389,7 +1370,7 @@ public class DockObserver extends DockManagerImpl {
             ResultReceiver resultReceiver = intent.getParcelableExtra("android.intent.extra.RESULT_RECEIVER");
             if (resultReceiver != null) {
                 if (byteExtra != -1 && shortExtra != -1 && shortExtra2 != -1) {
-                    DockObserver.runOnBackgroundThread(new GetWpcAuthCertificate(resultReceiver, byteExtra, shortExtra, shortExtra2));
+                    DockObserver.this.getWpcAuthCertificate(resultReceiver, byteExtra, shortExtra, shortExtra2);
                 } else {
                     resultReceiver.send(1, null);
                 }
@@ -1405,7 +1386,7 @@ public class DockObserver extends DockManagerImpl {
             if (resultReceiver != null) {
                 byte[] byteArrayExtra = intent.getByteArrayExtra("wpc_nonce");
                 if (byteArrayExtra != null && byteArrayExtra.length > 0) {
-                    DockObserver.runOnBackgroundThread(new GetWpcAuthChallengeResponse(resultReceiver, byteExtra, byteArrayExtra));
+                    DockObserver.this.getWpcAuthChallengeResponse(resultReceiver, byteExtra, byteArrayExtra);
                 } else {
                     resultReceiver.send(1, null);
                 }
@@ -1431,6 +1412,7 @@ public class DockObserver extends DockManagerImpl {
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_FAN_SIMPLE_INFO");
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_SET_FAN");
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_FAN_LEVEL");
+            intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_FAN_TELEMETRY");
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_WPC_DIGESTS");
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_WPC_CERTIFICATE");
             intentFilter.addAction("com.google.android.systemui.dreamliner.ACTION_GET_WPC_CHALLENGE_RESPONSE");
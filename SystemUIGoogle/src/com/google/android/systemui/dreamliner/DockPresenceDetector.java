@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import vendor.google.wireless_charger.V1_0.IWirelessCharger;
+
+/**
+ * Polls the WLC HAL for dock presence on a background looper.
+ *
+ * The first few probes are spaced closely since most docks report within a couple hundred
+ * milliseconds of power connect; after that the interval backs off exponentially until the
+ * polling deadline. All state is confined to the handler thread.
+ */
+class DockPresenceDetector {
+    private static final String TAG = "Dreamliner-WLC_HAL";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    @VisibleForTesting
+    static final long MAX_POLLING_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(5);
+    @VisibleForTesting
+    static final long FAST_PROBE_INTERVAL_MS = 50;
+    @VisibleForTesting
+    static final int FAST_PROBE_COUNT = 3;
+    @VisibleForTesting
+    static final long MAX_PROBE_INTERVAL_MS = 1000;
+
+    /** Issues a single isDockPresent call; returns false if the HAL is not available. */
+    interface Prober {
+        boolean probe(IWirelessCharger.isDockPresentCallback callback);
+    }
+
+    private final Handler mHandler;
+    private final Prober mProber;
+    private final Runnable mProbeRunnable = this::probe;
+    private final IWirelessCharger.isDockPresentCallback mProbeCallback = this::onProbeResult;
+
+    private IWirelessCharger.isDockPresentCallback mClientCallback;
+    private long mStartedTimeMs;
+    private long mNextIntervalMs;
+    private int mProbeCount;
+
+    // Metrics are only written on the handler thread; dump() may read them from any thread.
+    private volatile int mDetections;
+    private volatile int mTimeouts;
+    private volatile int mCancellations;
+    private volatile long mTotalProbes;
+    private volatile long mLastTimeToDetectMs = -1;
+    private volatile long mMaxTimeToDetectMs = -1;
+    private volatile long mTotalTimeToDetectMs;
+
+    DockPresenceDetector(Handler handler, Prober prober) {
+        mHandler = handler;
+        mProber = prober;
+    }
+
+    /**
+     * Starts a new detection round, replacing any round in progress. The callback is invoked on
+     * the handler thread once with the first docked result, or with the last result at timeout.
+     */
+    void start(IWirelessCharger.isDockPresentCallback callback) {
+        mHandler.post(() -> {
+            mHandler.removeCallbacks(mProbeRunnable);
+            mClientCallback = callback;
+            mStartedTimeMs = SystemClock.elapsedRealtime();
+            mNextIntervalMs = FAST_PROBE_INTERVAL_MS;
+            mProbeCount = 0;
+            mHandler.postDelayed(mProbeRunnable, FAST_PROBE_INTERVAL_MS);
+        });
+    }
+
+    /** Drops the round in progress without notifying the client. */
+    void cancel() {
+        mHandler.post(() -> {
+            if (mClientCallback == null) {
+                return;
+            }
+            mHandler.removeCallbacks(mProbeRunnable);
+            mClientCallback = null;
+            mCancellations++;
+            if (DEBUG) {
+                Log.d(TAG, "dock presence polling cancelled after " + mProbeCount + " probes");
+            }
+        });
+    }
+
+    private void probe() {
+        if (mClientCallback == null) {
+            return;
+        }
+        mProbeCount++;
+        mTotalProbes++;
+        if (!mProber.probe(mProbeCallback)) {
+            mClientCallback = null;
+        }
+    }
+
+    private void onProbeResult(boolean docked, byte type, byte orientation, boolean isGetInfoSupported, int id) {
+        IWirelessCharger.isDockPresentCallback callback = mClientCallback;
+        if (callback == null) {
+            return;
+        }
+        long elapsedMs = SystemClock.elapsedRealtime() - mStartedTimeMs;
+        if (id == 0 && elapsedMs < MAX_POLLING_TIMEOUT_MS) {
+            mHandler.postDelayed(mProbeRunnable, nextDelay(elapsedMs));
+            return;
+        }
+        mClientCallback = null;
+        if (id != 0) {
+            recordDetection(elapsedMs);
+        } else {
+            mTimeouts++;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "isDockPresent settled: docked=" + docked + ", id=" + id + ", probes=" + mProbeCount + ", elapsed=" + elapsedMs);
+        }
+        callback.onValues(docked, type, orientation, isGetInfoSupported, id);
+    }
+
+    private long nextDelay(long elapsedMs) {
+        long delay = FAST_PROBE_INTERVAL_MS;
+        if (mProbeCount >= FAST_PROBE_COUNT) {
+            mNextIntervalMs = Math.min(mNextIntervalMs * 2, MAX_PROBE_INTERVAL_MS);
+            delay = mNextIntervalMs;
+        }
+        // Always leave room for one last probe right at the deadline.
+        return Math.max(0, Math.min(delay, MAX_POLLING_TIMEOUT_MS - elapsedMs));
+    }
+
+    private void recordDetection(long elapsedMs) {
+        mDetections++;
+        mLastTimeToDetectMs = elapsedMs;
+        mTotalTimeToDetectMs += elapsedMs;
+        if (elapsedMs > mMaxTimeToDetectMs) {
+            mMaxTimeToDetectMs = elapsedMs;
+        }
+    }
+
+    @VisibleForTesting
+    long getLastTimeToDetectMs() {
+        return mLastTimeToDetectMs;
+    }
+
+    @VisibleForTesting
+    long getTotalProbes() {
+        return mTotalProbes;
+    }
+
+    void dump(PrintWriter pw) {
+        int detections = mDetections;
+        pw.println("  DockPresenceDetector:");
+        pw.println("    detections=" + detections + ", timeouts=" + mTimeouts + ", cancellations=" + mCancellations);
+        pw.println("    totalProbes=" + mTotalProbes);
+        pw.println("    timeToDetectMs: last=" + mLastTimeToDetectMs + ", max=" + mMaxTimeToDetectMs
+                + ", avg=" + (detections > 0 ? mTotalTimeToDetectMs / detections : -1));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.systemui.util.concurrency.DelayableExecutor;
+
+import java.io.PrintWriter;
+
+/**
+ * Reads the dock fan level on behalf of DockObserver.
+ *
+ * Requests arriving within {@link #COALESCE_WINDOW_MS} of each other share one HAL read, a read
+ * younger than the TTL is reused, and the listener only hears about levels that differ from the
+ * last one it was told about unless the caller forces a notification.
+ */
+class FanLevelPipeline {
+    private static final String TAG = "DLObserver";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    @VisibleForTesting
+    static final long COALESCE_WINDOW_MS = 100;
+
+    interface Listener {
+        /** Returns whether the level was actually broadcast. */
+        boolean onFanLevel(int level);
+    }
+
+    private final WirelessCharger mWirelessCharger;
+    private final DockCommandScheduler mCommandScheduler;
+    private final DelayableExecutor mBackgroundExecutor;
+    private final long mTtlMs;
+    private final Listener mListener;
+    private final Runnable mFlushRunnable = this::flush;
+
+    @GuardedBy("this")
+    private boolean mReadScheduled;
+    @GuardedBy("this")
+    private boolean mForceNotify;
+    @GuardedBy("this")
+    private int mFanLevel = -1;
+    @GuardedBy("this")
+    private long mLastReadTimeMs = -1;
+    @GuardedBy("this")
+    private int mLastNotifiedLevel = -1;
+
+    @GuardedBy("this")
+    private long mRequests;
+    @GuardedBy("this")
+    private long mHalReads;
+    @GuardedBy("this")
+    private long mCoalescedRequests;
+    @GuardedBy("this")
+    private long mTtlHits;
+    @GuardedBy("this")
+    private long mNotifications;
+    @GuardedBy("this")
+    private long mSuppressedNotifications;
+
+    FanLevelPipeline(WirelessCharger wirelessCharger, DockCommandScheduler commandScheduler,
+            DelayableExecutor backgroundExecutor, long ttlMs, Listener listener) {
+        mWirelessCharger = wirelessCharger;
+        mCommandScheduler = commandScheduler;
+        mBackgroundExecutor = backgroundExecutor;
+        mTtlMs = ttlMs;
+        mListener = listener;
+    }
+
+    /**
+     * Schedules a fan level refresh. With {@code forceNotify} the listener is told about the
+     * resulting level even if it has not changed.
+     */
+    void requestUpdate(boolean forceNotify) {
+        synchronized (this) {
+            mRequests++;
+            mForceNotify |= forceNotify;
+            if (mReadScheduled) {
+                mCoalescedRequests++;
+                return;
+            }
+            mReadScheduled = true;
+        }
+        mBackgroundExecutor.executeDelayed(mFlushRunnable, COALESCE_WINDOW_MS);
+    }
+
+    /** Drops the cached level so the next request goes to the HAL. */
+    synchronized void invalidate() {
+        mLastReadTimeMs = -1;
+    }
+
+    synchronized int getFanLevel() {
+        return mFanLevel;
+    }
+
+    private void flush() {
+        boolean forceNotify;
+        boolean needsRead;
+        synchronized (this) {
+            mReadScheduled = false;
+            forceNotify = mForceNotify;
+            mForceNotify = false;
+            needsRead = mLastReadTimeMs < 0
+                    || SystemClock.elapsedRealtime() - mLastReadTimeMs >= mTtlMs;
+            if (!needsRead) {
+                mTtlHits++;
+            }
+        }
+        if (!needsRead) {
+            notifyIfNeeded(forceNotify);
+            return;
+        }
+        if (mWirelessCharger == null) {
+            Log.i(TAG, "hint is UNKNOWN for null wireless charger HAL");
+            onFanLevelRead(-1, forceNotify);
+            return;
+        }
+        long startTimeMs = SystemClock.elapsedRealtime();
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_FAN_LEVEL, "fanLevel",
+                mWirelessCharger::getFanLevelAsync).whenComplete((level, t) -> {
+            int value = level != null ? level : -1;
+            if (DEBUG) {
+                Log.d(TAG, "command=2, l=" + value + ", spending time=" + (SystemClock.elapsedRealtime() - startTimeMs));
+            }
+            onFanLevelRead(value, forceNotify);
+        });
+    }
+
+    private void onFanLevelRead(int level, boolean forceNotify) {
+        synchronized (this) {
+            mHalReads++;
+            mFanLevel = level;
+            mLastReadTimeMs = level == -1 ? -1 : SystemClock.elapsedRealtime();
+        }
+        notifyIfNeeded(forceNotify);
+    }
+
+    private void notifyIfNeeded(boolean forceNotify) {
+        int level;
+        synchronized (this) {
+            level = mFanLevel;
+            if (!forceNotify && level == mLastNotifiedLevel) {
+                mSuppressedNotifications++;
+                return;
+            }
+        }
+        if (mListener.onFanLevel(level)) {
+            synchronized (this) {
+                mLastNotifiedLevel = level;
+                mNotifications++;
+            }
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("  FanLevelPipeline:");
+        pw.println("    level=" + mFanLevel + ", lastNotified=" + mLastNotifiedLevel + ", ttlMs=" + mTtlMs);
+        pw.println("    requests=" + mRequests + ", halReads=" + mHalReads
+                + ", readsAvoided=" + (mCoalescedRequests + mTtlHits)
+                + " (coalesced=" + mCoalescedRequests + ", ttlHits=" + mTtlHits + ")");
+        pw.println("    broadcasts=" + mNotifications + ", broadcastsSuppressed=" + mSuppressedNotifications);
+    }
+}
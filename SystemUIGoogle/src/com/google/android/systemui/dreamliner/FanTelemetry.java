@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.systemui.util.concurrency.DelayableExecutor;
+
+import java.io.PrintWriter;
+
+/**
+ * Keeps a short history of dock fan readings for diagnosing thermal complaints.
+ *
+ * While docked, fan 0 is sampled every interval. Only these samples are recorded: readings
+ * fetched for the Dreamliner app may be for another fan, and a sample that coincides with such
+ * a read shares its result, so recording both would count one reading twice. Samples live in
+ * fixed-size primitive arrays used as a ring buffer, so recording never allocates, and
+ * min/max/mean of the current RPM are kept incrementally for the dock session.
+ */
+class FanTelemetry {
+    private static final String TAG = "DLObserver";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    @VisibleForTesting
+    static final int CAPACITY = 128;
+    private static final byte SAMPLED_FAN_ID = 0;
+    private static final int DUMP_SAMPLES = 16;
+
+    private final WirelessCharger mWirelessCharger;
+    private final DockCommandScheduler mCommandScheduler;
+    private final DelayableExecutor mBackgroundExecutor;
+    private final long mIntervalMs;
+    private final Runnable mSampleRunnable = this::sample;
+
+    @GuardedBy("this")
+    private final long[] mTimesMs = new long[CAPACITY];
+    @GuardedBy("this")
+    private final byte[] mModes = new byte[CAPACITY];
+    @GuardedBy("this")
+    private final int[] mCurrentRpms = new int[CAPACITY];
+    @GuardedBy("this")
+    private final int[] mMinRpms = new int[CAPACITY];
+    @GuardedBy("this")
+    private final int[] mMaxRpms = new int[CAPACITY];
+    @GuardedBy("this")
+    private int mNext;
+    @GuardedBy("this")
+    private int mSize;
+
+    // Session summary of fan_current_rpm.
+    @GuardedBy("this")
+    private int mRpmMin = Integer.MAX_VALUE;
+    @GuardedBy("this")
+    private int mRpmMax = Integer.MIN_VALUE;
+    @GuardedBy("this")
+    private long mRpmSum;
+    @GuardedBy("this")
+    private long mRpmCount;
+
+    @GuardedBy("this")
+    private boolean mSampling;
+    @GuardedBy("this")
+    private Runnable mCancelSample;
+
+    FanTelemetry(WirelessCharger wirelessCharger, DockCommandScheduler commandScheduler,
+            DelayableExecutor backgroundExecutor, long intervalMs) {
+        mWirelessCharger = wirelessCharger;
+        mCommandScheduler = commandScheduler;
+        mBackgroundExecutor = backgroundExecutor;
+        mIntervalMs = intervalMs;
+    }
+
+    /** Starts a new dock session: resets the summary and begins periodic sampling. */
+    synchronized void start() {
+        mRpmMin = Integer.MAX_VALUE;
+        mRpmMax = Integer.MIN_VALUE;
+        mRpmSum = 0;
+        mRpmCount = 0;
+        if (mSampling || mWirelessCharger == null || mIntervalMs <= 0) {
+            return;
+        }
+        mSampling = true;
+        scheduleSampleLocked();
+    }
+
+    /** Stops periodic sampling; the history is kept for dumpsys and export. */
+    synchronized void stop() {
+        mSampling = false;
+        if (mCancelSample != null) {
+            mCancelSample.run();
+            mCancelSample = null;
+        }
+    }
+
+    @GuardedBy("this")
+    private void scheduleSampleLocked() {
+        mCancelSample = mBackgroundExecutor.executeDelayed(mSampleRunnable, mIntervalMs);
+    }
+
+    private void sample() {
+        synchronized (this) {
+            if (!mSampling) {
+                return;
+            }
+            scheduleSampleLocked();
+        }
+        mCommandScheduler.submit(DockCommandScheduler.CMD_GET_FAN_INFO, SAMPLED_FAN_ID,
+                () -> mWirelessCharger.getFanInformationAsync(SAMPLED_FAN_ID)).whenComplete((bundle, t) -> {
+            if (t == null) {
+                record(bundle);
+            } else if (DEBUG) {
+                Log.d(TAG, "fan telemetry sample failed: " + t);
+            }
+        });
+    }
+
+    /** Records a fan information bundle; fields the bundle lacks are stored as -1. */
+    private void record(Bundle bundle) {
+        if (bundle == null) {
+            return;
+        }
+        record(bundle.getByte("fan_mode", (byte) -1), bundle.getInt("fan_current_rpm", -1),
+                bundle.getInt("fan_min_rpm", -1), bundle.getInt("fan_max_rpm", -1));
+    }
+
+    @VisibleForTesting
+    synchronized void record(byte mode, int currentRpm, int minRpm, int maxRpm) {
+        int i = mNext;
+        mTimesMs[i] = SystemClock.elapsedRealtime();
+        mModes[i] = mode;
+        mCurrentRpms[i] = currentRpm;
+        mMinRpms[i] = minRpm;
+        mMaxRpms[i] = maxRpm;
+        mNext = (i + 1) % CAPACITY;
+        if (mSize < CAPACITY) {
+            mSize++;
+        }
+        if (currentRpm >= 0) {
+            mRpmMin = Math.min(mRpmMin, currentRpm);
+            mRpmMax = Math.max(mRpmMax, currentRpm);
+            mRpmSum += currentRpm;
+            mRpmCount++;
+        }
+    }
+
+    /** Returns the history, oldest first, and the session summary for ACTION_GET_FAN_TELEMETRY. */
+    synchronized Bundle export() {
+        long[] times = new long[mSize];
+        byte[] modes = new byte[mSize];
+        int[] currentRpms = new int[mSize];
+        int[] minRpms = new int[mSize];
+        int[] maxRpms = new int[mSize];
+        for (int n = 0; n < mSize; n++) {
+            int i = indexOfLocked(n);
+            times[n] = mTimesMs[i];
+            modes[n] = mModes[i];
+            currentRpms[n] = mCurrentRpms[i];
+            minRpms[n] = mMinRpms[i];
+            maxRpms[n] = mMaxRpms[i];
+        }
+        Bundle bundle = new Bundle();
+        bundle.putLongArray("fan_telemetry_time_ms", times);
+        bundle.putByteArray("fan_telemetry_mode", modes);
+        bundle.putIntArray("fan_telemetry_current_rpm", currentRpms);
+        bundle.putIntArray("fan_telemetry_min_rpm", minRpms);
+        bundle.putIntArray("fan_telemetry_max_rpm", maxRpms);
+        bundle.putInt("fan_telemetry_rpm_min", mRpmCount > 0 ? mRpmMin : -1);
+        bundle.putInt("fan_telemetry_rpm_max", mRpmCount > 0 ? mRpmMax : -1);
+        bundle.putInt("fan_telemetry_rpm_mean", mRpmCount > 0 ? (int) (mRpmSum / mRpmCount) : -1);
+        return bundle;
+    }
+
+    // n-th oldest sample.
+    @GuardedBy("this")
+    private int indexOfLocked(int n) {
+        return (mNext - mSize + n + CAPACITY) % CAPACITY;
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("  FanTelemetry:");
+        pw.println("    sampling=" + mSampling + ", intervalMs=" + mIntervalMs
+                + ", samples=" + mSize + "/" + CAPACITY);
+        if (mRpmCount > 0) {
+            pw.println("    currentRpm: min=" + mRpmMin + ", max=" + mRpmMax
+                    + ", mean=" + (mRpmSum / mRpmCount) + ", count=" + mRpmCount);
+        }
+        long now = SystemClock.elapsedRealtime();
+        for (int n = Math.max(0, mSize - DUMP_SAMPLES); n < mSize; n++) {
+            int i = indexOfLocked(n);
+            pw.println("    -" + (now - mTimesMs[i]) + "ms: m=" + mModes[i] + ", cr=" + mCurrentRpms[i]
+                    + ", mir=" + mMinRpms[i] + ", mxr=" + mMaxRpms[i]);
+        }
+    }
+}
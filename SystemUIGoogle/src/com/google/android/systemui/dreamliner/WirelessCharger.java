@@ -18,6 +18,7 @@ package com.google.android.systemui.dreamliner;
 
 import android.os.Bundle;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 public interface WirelessCharger {
 
@@ -73,12 +74,25 @@ public interface WirelessCharger {
         void onCallback(int i);
     }
 
+    interface ServiceDiedListener {
+        void onServiceDied();
+    }
+
+    /*
+     * Callback variants. Except for IsDockPresentCallback, which is posted to the main thread,
+     * callbacks run on the wireless charger HAL thread rather than the caller's thread; callers
+     * that touch thread-confined state must post the result themselves.
+     */
+
     void asyncIsDockPresent(IsDockPresentCallback isDockPresentCallback);
 
+    void cancelIsDockPresent();
+
     void challenge(byte b, byte[] bArr, ChallengeCallback challengeCallback);
 
     void getFanInformation(byte b, GetFanInformationCallback getFanInformationCallback);
 
+    /** Returns the fan level, or -1 if the HAL does not answer within a short bound. */
     int getFanLevel();
 
     void getFanSimpleInformation(byte b, GetFanSimpleInformationCallback getFanSimpleInformationCallback);
@@ -97,7 +111,79 @@ public interface WirelessCharger {
 
     void registerAlignInfo(AlignInfoListener alignInfoListener);
 
+    void registerServiceDiedListener(ServiceDiedListener serviceDiedListener);
+
     void setFan(byte b, byte b2, int i, SetFanCallback setFanCallback);
 
     void setFeatures(long j, long j2, SetFeaturesCallback setFeaturesCallback);
+
+    /*
+     * Asynchronous variants of the calls above. They run on a single HAL thread, carry a deadline,
+     * and fail with WirelessChargerException when the HAL returns a non-zero status. While a call
+     * is stuck past its deadline, new calls fail at once instead of queueing behind it. Byte payloads
+     * are converted from the HIDL vectors once and handed out as plain arrays.
+     */
+
+    CompletableFuture<DockInfo> getInformationAsync();
+
+    CompletableFuture<KeyExchangeResult> keyExchangeAsync(byte[] publicKey);
+
+    CompletableFuture<byte[]> challengeAsync(byte dockId, byte[] challenge);
+
+    CompletableFuture<WpcAuthDigests> getWpcAuthDigestsAsync(byte slotMask);
+
+    CompletableFuture<byte[]> getWpcAuthCertificateAsync(byte slot, short offset, short length);
+
+    CompletableFuture<WpcAuthChallengeResponse> getWpcAuthChallengeResponseAsync(byte slot, byte[] nonce);
+
+    CompletableFuture<Bundle> getFanInformationAsync(byte fanId);
+
+    CompletableFuture<Bundle> getFanSimpleInformationAsync(byte fanId);
+
+    CompletableFuture<Bundle> setFanAsync(byte fanId, byte fanMode, int fanRpm);
+
+    CompletableFuture<Integer> getFanLevelAsync();
+
+    CompletableFuture<Long> getFeaturesAsync(long chargerId);
+
+    CompletableFuture<Void> setFeaturesAsync(long chargerId, long features);
+
+    final class KeyExchangeResult {
+        public final byte dockId;
+        public final byte[] dockPublicKey;
+
+        public KeyExchangeResult(byte dockId, byte[] dockPublicKey) {
+            this.dockId = dockId;
+            this.dockPublicKey = dockPublicKey;
+        }
+    }
+
+    final class WpcAuthDigests {
+        public final byte slotPopulatedMask;
+        public final byte slotReturnedMask;
+        public final ArrayList<byte[]> digests;
+
+        public WpcAuthDigests(byte slotPopulatedMask, byte slotReturnedMask, ArrayList<byte[]> digests) {
+            this.slotPopulatedMask = slotPopulatedMask;
+            this.slotReturnedMask = slotReturnedMask;
+            this.digests = digests;
+        }
+    }
+
+    final class WpcAuthChallengeResponse {
+        public final byte maxProtocolVersion;
+        public final byte slotPopulatedMask;
+        public final byte certificateLsb;
+        public final byte[] signatureR;
+        public final byte[] signatureS;
+
+        public WpcAuthChallengeResponse(byte maxProtocolVersion, byte slotPopulatedMask,
+                byte certificateLsb, byte[] signatureR, byte[] signatureS) {
+            this.maxProtocolVersion = maxProtocolVersion;
+            this.slotPopulatedMask = slotPopulatedMask;
+            this.certificateLsb = certificateLsb;
+            this.signatureR = signatureR;
+            this.signatureS = signatureS;
+        }
+    }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+/** A WLC HAL call that completed with a non-zero status. */
+public class WirelessChargerException extends Exception {
+    private final int mStatus;
+
+    public WirelessChargerException(int status) {
+        super("wireless charger hal status " + status);
+        mStatus = status;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+}
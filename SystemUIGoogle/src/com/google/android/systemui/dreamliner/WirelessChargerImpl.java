@@ -18,15 +18,28 @@ package com.google.android.systemui.dreamliner;
 
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IHwBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.systemui.Dumpable;
+import com.android.systemui.dump.DumpManager;
 import com.google.android.systemui.dreamliner.WirelessCharger;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import vendor.google.wireless_charger.V1_0.KeyExchangeResponse;
 import vendor.google.wireless_charger.V1_1.AlignInfo;
@@ -37,19 +50,24 @@ import vendor.google.wireless_charger.V1_3.IWirelessCharger;
 
 import javax.inject.Inject;
 
-public class WirelessChargerImpl implements WirelessCharger, IHwBinder.DeathRecipient, IWirelessCharger.isDockPresentCallback {
+public class WirelessChargerImpl implements WirelessCharger, IHwBinder.DeathRecipient, Dumpable {
     private static final boolean DEBUG = Log.isLoggable("Dreamliner-WLC_HAL", 3);
-    private static final long MAX_POLLING_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(5);
+    private static final int MAX_PENDING_HAL_CALLS = 32;
+    private static final long DEFAULT_HAL_TIMEOUT_MS = 3000;
+    private static final long AUTH_HAL_TIMEOUT_MS = 5000;
+    private static final long FAN_LEVEL_WAIT_MS = 500;
     private final Handler mHandler = new Handler(Looper.getMainLooper());
-    private IWirelessCharger.isDockPresentCallback mCallback;
-    private long mPollingStartedTimeNs;
-    private vendor.google.wireless_charger.V1_3.IWirelessCharger mWirelessCharger;
-    private final Runnable mRunnable = new Runnable() {
-        @Override
-        public void run() {
-            isDockPresentInternal(mCallback);
-        }
-    };
+    private final Handler mHalHandler;
+    private final DockPresenceDetector mDockPresenceDetector;
+    private final AtomicInteger mPendingHalCalls = new AtomicInteger();
+    private final AtomicInteger mRejectedHalCalls = new AtomicInteger();
+    private final AtomicInteger mSkippedHalCalls = new AtomicInteger();
+    private final AtomicInteger mHungHalCalls = new AtomicInteger();
+    // Deadline, in uptime, of the call running on the HAL thread; 0 while it is idle.
+    private volatile long mRunningCallDeadline;
+    private final CopyOnWriteArrayList<WirelessCharger.ServiceDiedListener> mServiceDiedListeners = new CopyOnWriteArrayList<>();
+    private volatile vendor.google.wireless_charger.V1_3.IWirelessCharger mWirelessCharger;
+    private final AtomicInteger mHalConnections = new AtomicInteger();
 
     private static Bundle convertFanInfo(byte b, FanInfo fanInfo) {
         Bundle bundle = new Bundle();
@@ -72,245 +90,370 @@ public class WirelessChargerImpl implements WirelessCharger, IHwBinder.DeathReci
     }
 
     @Inject
-    public WirelessChargerImpl() {
+    public WirelessChargerImpl(DumpManager dumpManager) {
+        HandlerThread halThread = new HandlerThread("Dreamliner-WLC_HAL");
+        halThread.start();
+        mHalHandler = new Handler(halThread.getLooper());
+        mDockPresenceDetector = new DockPresenceDetector(mHalHandler, this::isDockPresentInternal);
+        dumpManager.registerDumpable(WirelessChargerImpl.class.getName(), this);
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void asyncIsDockPresent(WirelessCharger.IsDockPresentCallback isDockPresentCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            mPollingStartedTimeNs = System.nanoTime();
-            mCallback = new IsDockPresentCallbackWrapper(isDockPresentCallback);
-            mHandler.removeCallbacks(mRunnable);
-            mHandler.postDelayed(mRunnable, 100L);
-        }
+        mDockPresenceDetector.start(new IsDockPresentCallbackWrapper(isDockPresentCallback));
+    }
+
+    @Override
+    public void cancelIsDockPresent() {
+        mDockPresenceDetector.cancel();
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void getInformation(WirelessCharger.GetInformationCallback getInformationCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getInformation(new GetInformationCallbackWrapper(getInformationCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "getInformation fail: " + e.getMessage());
-            }
-        }
+        runOnHal("getInformation", (hal, result) -> {
+            hal.getInformation(new GetInformationCallbackWrapper(getInformationCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void keyExchange(byte[] bArr, WirelessCharger.KeyExchangeCallback keyExchangeCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.keyExchange(convertPrimitiveArrayToArrayList(bArr), new KeyExchangeCallbackWrapper(keyExchangeCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "keyExchange fail: " + e.getMessage());
-            }
-        }
+        runOnHal("keyExchange", (hal, result) -> {
+            hal.keyExchange(convertPrimitiveArrayToArrayList(bArr), new KeyExchangeCallbackWrapper(keyExchangeCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void challenge(byte b, byte[] bArr, WirelessCharger.ChallengeCallback challengeCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.challenge(b, convertPrimitiveArrayToArrayList(bArr), new ChallengeCallbackWrapper(challengeCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "challenge fail: " + e.getMessage());
-            }
-        }
+        runOnHal("challenge", (hal, result) -> {
+            hal.challenge(b, convertPrimitiveArrayToArrayList(bArr), new ChallengeCallbackWrapper(challengeCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void registerAlignInfo(WirelessCharger.AlignInfoListener alignInfoListener) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.registerCallback(new WirelessChargerInfoCallback(alignInfoListener));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "register alignInfo callback fail: " + e.getMessage());
-            }
-        }
+        runOnHal("register alignInfo callback", (hal, result) -> {
+            hal.registerCallback(new WirelessChargerInfoCallback(alignInfoListener));
+            result.complete(null);
+        });
+    }
+
+    @Override
+    public void registerServiceDiedListener(WirelessCharger.ServiceDiedListener serviceDiedListener) {
+        mServiceDiedListeners.addIfAbsent(serviceDiedListener);
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void getFanSimpleInformation(byte b, WirelessCharger.GetFanSimpleInformationCallback getFanSimpleInformationCallback) {
-        initHALInterface();
         Log.d("Dreamliner-WLC_HAL", "command=3");
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getFan(b, new GetFanSimpleInformationCallbackWrapper(b, getFanSimpleInformationCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "command=3 fail: " + e.getMessage());
-            }
-        }
+        runOnHal("command=3", (hal, result) -> {
+            hal.getFan(b, new GetFanSimpleInformationCallbackWrapper(b, getFanSimpleInformationCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void getFanInformation(byte b, WirelessCharger.GetFanInformationCallback getFanInformationCallback) {
-        initHALInterface();
         Log.d("Dreamliner-WLC_HAL", "command=0");
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getFanInformation(b, new GetFanInformationCallbackWrapper(b, getFanInformationCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "command=0 fail: " + e.getMessage());
-            }
-        }
+        runOnHal("command=0", (hal, result) -> {
+            hal.getFanInformation(b, new GetFanInformationCallbackWrapper(b, getFanInformationCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void setFan(byte b, byte b2, int i, WirelessCharger.SetFanCallback setFanCallback) {
-        initHALInterface();
         Log.d("Dreamliner-WLC_HAL", "command=1, i=" + ((int) b) + ", m=" + ((int) b2) + ", r=" + i);
-        if (mWirelessCharger != null) {
-            try {
-                long currentTimeMillis = System.currentTimeMillis();
-                mWirelessCharger.setFan(b, b2, (short) i, new SetFanCallbackWrapper(b, setFanCallback));
-                if (!DEBUG) {
-                    return;
-                }
+        runOnHal("command=1", (hal, result) -> {
+            long currentTimeMillis = System.currentTimeMillis();
+            hal.setFan(b, b2, (short) i, new SetFanCallbackWrapper(b, setFanCallback));
+            if (DEBUG) {
                 Log.d("Dreamliner-WLC_HAL", "command=1 spending time: " + (System.currentTimeMillis() - currentTimeMillis));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "command=1 fail: " + e.getMessage());
             }
-        }
+            result.complete(null);
+        });
     }
 
     @Override
     public void getWpcAuthDigests(byte b, WirelessCharger.GetWpcAuthDigestsCallback getWpcAuthDigestsCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getWpcAuthDigests(b, new GetWpcAuthDigestsCallbackWrapper(getWpcAuthDigestsCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "get wpc digests fail: " + e.getMessage());
-            }
-        }
+        runOnHal("get wpc digests", (hal, result) -> {
+            hal.getWpcAuthDigests(b, new GetWpcAuthDigestsCallbackWrapper(getWpcAuthDigestsCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     public void getWpcAuthCertificate(byte b, short s, short s2, WirelessCharger.GetWpcAuthCertificateCallback getWpcAuthCertificateCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getWpcAuthCertificate(b, s, s2, new GetWpcAuthCertificateCallbackWrapper(getWpcAuthCertificateCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "get wpc cert fail: " + e.getMessage());
-            }
-        }
+        runOnHal("get wpc cert", (hal, result) -> {
+            hal.getWpcAuthCertificate(b, s, s2, new GetWpcAuthCertificateCallbackWrapper(getWpcAuthCertificateCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     public void getWpcAuthChallengeResponse(byte b, byte[] bArr, WirelessCharger.GetWpcAuthChallengeResponseCallback getWpcAuthChallengeResponseCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getWpcAuthChallengeResponse(b, convertPrimitiveArrayToArrayList(bArr), new GetWpcAuthChallengeResponseCallbackWrapper(getWpcAuthChallengeResponseCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "get wpc challenge response fail: " + e.getMessage());
-            }
-        }
+        runOnHal("get wpc challenge response", (hal, result) -> {
+            hal.getWpcAuthChallengeResponse(b, convertPrimitiveArrayToArrayList(bArr), new GetWpcAuthChallengeResponseCallbackWrapper(getWpcAuthChallengeResponseCallback));
+            result.complete(null);
+        });
     }
 
     @Override
     public void setFeatures(long j, long j2, WirelessCharger.SetFeaturesCallback setFeaturesCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                setFeaturesCallback.onCallback(mWirelessCharger.setFeatures(j, j2));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "set features fail: " + e.getMessage());
-            }
-        }
+        runOnHal("set features", (hal, result) -> {
+            setFeaturesCallback.onCallback(hal.setFeatures(j, j2));
+            result.complete(null);
+        });
     }
 
     @Override
     public void getFeatures(long j, WirelessCharger.GetFeaturesCallback getFeaturesCallback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
-            try {
-                mWirelessCharger.getFeatures(j, new GetFeaturesCallbackWrapper(getFeaturesCallback));
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "get features fail: " + e.getMessage());
-            }
-        }
+        runOnHal("get features", (hal, result) -> {
+            hal.getFeatures(j, new GetFeaturesCallbackWrapper(getFeaturesCallback));
+            result.complete(null);
+        });
     }
 
+    /**
+     * Waits at most {@link #FAN_LEVEL_WAIT_MS} for the HAL; prefer {@link #getFanLevelAsync()}.
+     * Returns -1 at once on the HAL thread, where waiting would deadlock.
+     */
     @Override
     public int getFanLevel() {
-        initHALInterface();
-        Log.d("Dreamliner-WLC_HAL", "command=2");
-        if (mWirelessCharger != null) {
-            try {
-                return mWirelessCharger.getFanLevel();
-            } catch (Exception e) {
-                Log.i("Dreamliner-WLC_HAL", "command=2 fail: " + e.getMessage());
-                return -1;
-            }
+        if (mHalHandler.getLooper().isCurrentThread()) {
+            return -1;
+        }
+        try {
+            return getFanLevelAsync().get(FAN_LEVEL_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            return -1;
         }
-        return -1;
+    }
+
+    @Override
+    public CompletableFuture<DockInfo> getInformationAsync() {
+        return submit("getInformation", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getInformation((b, dockInfo) -> complete(result, b,
+                        () -> new DockInfo(dockInfo.manufacturer, dockInfo.model, dockInfo.serial, Byte.valueOf(dockInfo.type).intValue()))));
+    }
+
+    @Override
+    public CompletableFuture<KeyExchangeResult> keyExchangeAsync(byte[] publicKey) {
+        return submit("keyExchange", AUTH_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.keyExchange(convertPrimitiveArrayToArrayList(publicKey), (b, response) -> complete(result, b,
+                        () -> response != null ? new KeyExchangeResult(response.dockId, toByteArray(response.dockPublicKey)) : new KeyExchangeResult((byte) -1, null))));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> challengeAsync(byte dockId, byte[] challenge) {
+        return submit("challenge", AUTH_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.challenge(dockId, convertPrimitiveArrayToArrayList(challenge), (b, response) -> complete(result, b, () -> toByteArray(response))));
+    }
+
+    @Override
+    public CompletableFuture<WpcAuthDigests> getWpcAuthDigestsAsync(byte slotMask) {
+        return submit("get wpc digests", AUTH_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getWpcAuthDigests(slotMask, (b, populatedMask, returnedMask, digests) -> complete(result, b,
+                        () -> new WpcAuthDigests(populatedMask, returnedMask, digests))));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getWpcAuthCertificateAsync(byte slot, short offset, short length) {
+        return submit("get wpc cert", AUTH_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getWpcAuthCertificate(slot, offset, length, (b, certificate) -> complete(result, b, () -> toByteArray(certificate))));
+    }
+
+    @Override
+    public CompletableFuture<WpcAuthChallengeResponse> getWpcAuthChallengeResponseAsync(byte slot, byte[] nonce) {
+        return submit("get wpc challenge response", AUTH_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getWpcAuthChallengeResponse(slot, convertPrimitiveArrayToArrayList(nonce),
+                        (b, maxProtocolVersion, populatedMask, certificateLsb, signatureR, signatureS) -> complete(result, b,
+                                () -> new WpcAuthChallengeResponse(maxProtocolVersion, populatedMask, certificateLsb, toByteArray(signatureR), toByteArray(signatureS)))));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> getFanInformationAsync(byte fanId) {
+        return submit("command=0", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getFanInformation(fanId, (b, info) -> complete(result, b, () -> convertFanDetailedInfo(fanId, info))));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> getFanSimpleInformationAsync(byte fanId) {
+        return submit("command=3", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getFan(fanId, (b, info) -> complete(result, b, () -> convertFanInfo(fanId, info))));
+    }
+
+    @Override
+    public CompletableFuture<Bundle> setFanAsync(byte fanId, byte fanMode, int fanRpm) {
+        return submit("command=1", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.setFan(fanId, fanMode, (short) fanRpm, (b, info) -> complete(result, b, () -> convertFanInfo(fanId, info))));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getFanLevelAsync() {
+        return submit("command=2", DEFAULT_HAL_TIMEOUT_MS, (hal, result) -> result.complete(hal.getFanLevel()));
+    }
+
+    @Override
+    public CompletableFuture<Long> getFeaturesAsync(long chargerId) {
+        return submit("get features", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                hal.getFeatures(chargerId, (b, features) -> complete(result, b, () -> features)));
+    }
+
+    @Override
+    public CompletableFuture<Void> setFeaturesAsync(long chargerId, long features) {
+        return submit("set features", DEFAULT_HAL_TIMEOUT_MS, (hal, result) ->
+                complete(result, (byte) hal.setFeatures(chargerId, features), () -> null));
     }
 
     public void serviceDied(long j) {
         Log.i("Dreamliner-WLC_HAL", "serviceDied");
         mWirelessCharger = null;
+        for (WirelessCharger.ServiceDiedListener listener : mServiceDiedListeners) {
+            listener.onServiceDied();
+        }
     }
 
-    private ArrayList<Byte> convertPrimitiveArrayToArrayList(byte[] bArr) {
+    // HIDL only takes vec<uint8_t> as ArrayList<Byte>. Boxing goes through the Byte cache, so
+    // the cost is the list itself; size it up front to avoid regrowing it.
+    private static ArrayList<Byte> convertPrimitiveArrayToArrayList(byte[] bArr) {
         if (bArr == null || bArr.length <= 0) {
             return null;
         }
-        ArrayList<Byte> arrayList = new ArrayList<>();
+        ArrayList<Byte> arrayList = new ArrayList<>(bArr.length);
         for (byte b : bArr) {
             arrayList.add(b);
         }
         return arrayList;
     }
 
-    private void isDockPresentInternal(IWirelessCharger.isDockPresentCallback callback) {
-        initHALInterface();
-        if (mWirelessCharger != null) {
+    @VisibleForTesting
+    static byte[] toByteArray(ArrayList<Byte> arrayList) {
+        if (arrayList == null) {
+            return null;
+        }
+        int size = arrayList.size();
+        byte[] bArr = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bArr[i] = arrayList.get(i);
+        }
+        return bArr;
+    }
+
+    private boolean isDockPresentInternal(IWirelessCharger.isDockPresentCallback callback) {
+        IWirelessCharger hal = getHalInterface();
+        if (hal != null) {
             try {
-                mWirelessCharger.isDockPresent(callback);
+                hal.isDockPresent(callback);
+                return true;
             } catch (Exception e) {
                 Log.i("Dreamliner-WLC_HAL", "isDockPresent fail: " + e.getMessage());
             }
         }
+        return false;
+    }
+
+    private void runOnHal(String name, HalCall<Void> call) {
+        submit(name, DEFAULT_HAL_TIMEOUT_MS, call);
+    }
+
+    /**
+     * Queues a HAL call on the HAL thread. The returned future fails with
+     * {@link RejectedExecutionException} if too many calls are already queued, with
+     * {@link java.util.concurrent.TimeoutException} once the deadline passes, and with
+     * {@link WirelessChargerException} if the HAL reports a non-zero status. A call whose future
+     * is already done (cancelled or timed out) when its turn comes is skipped. While the call on
+     * the HAL thread has overrun its deadline, new calls fail with
+     * {@link java.util.concurrent.TimeoutException} at once rather than wait behind it.
+     */
+    private <T> CompletableFuture<T> submit(String name, long timeoutMs, HalCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long runningDeadline = mRunningCallDeadline;
+        if (runningDeadline != 0 && SystemClock.uptimeMillis() > runningDeadline) {
+            mHungHalCalls.incrementAndGet();
+            Log.w("Dreamliner-WLC_HAL", name + " failed fast, hal call overran its deadline");
+            result.completeExceptionally(new TimeoutException(name));
+            return result;
+        }
+        if (mPendingHalCalls.incrementAndGet() > MAX_PENDING_HAL_CALLS) {
+            mPendingHalCalls.decrementAndGet();
+            mRejectedHalCalls.incrementAndGet();
+            Log.w("Dreamliner-WLC_HAL", name + " rejected, too many pending calls");
+            result.completeExceptionally(new RejectedExecutionException(name));
+            return result;
+        }
+        mHalHandler.post(() -> {
+            mPendingHalCalls.decrementAndGet();
+            if (result.isDone()) {
+                mSkippedHalCalls.incrementAndGet();
+                return;
+            }
+            IWirelessCharger hal = getHalInterface();
+            if (hal == null) {
+                result.completeExceptionally(new IllegalStateException("no wireless charger hal"));
+                return;
+            }
+            mRunningCallDeadline = SystemClock.uptimeMillis() + timeoutMs;
+            try {
+                call.run(hal, result);
+            } catch (Exception e) {
+                Log.i("Dreamliner-WLC_HAL", name + " fail: " + e.getMessage());
+                result.completeExceptionally(e);
+            } finally {
+                mRunningCallDeadline = 0;
+            }
+        });
+        return result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
     }
 
-    @Override
-    public void onValues(boolean z, byte b, byte b2, boolean z2, int i) {
-        if (System.nanoTime() < mPollingStartedTimeNs + MAX_POLLING_TIMEOUT_NS && i == 0) {
-            mHandler.postDelayed(mRunnable, 100L);
-            return;
-        }
-        if (mCallback == null) {
-            return;
+    private static <T> void complete(CompletableFuture<T> result, byte status, Supplier<T> value) {
+        if (status == 0) {
+            result.complete(value.get());
+        } else {
+            result.completeExceptionally(new WirelessChargerException(Byte.valueOf(status).intValue()));
         }
-        mCallback.onValues(z, b, b2, z2, i);
-        mCallback = null;
     }
 
-    private void initHALInterface() {
+    @Override
+    public void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("WirelessChargerImpl:");
+        pw.println("  halConnected=" + (mWirelessCharger != null) + ", halConnections=" + mHalConnections.get());
+        pw.println("  pendingHalCalls=" + mPendingHalCalls.get() + ", rejected=" + mRejectedHalCalls.get()
+                + ", skipped=" + mSkippedHalCalls.get() + ", failedFast=" + mHungHalCalls.get());
+        mDockPresenceDetector.dump(pw);
+    }
+
+    /**
+     * Returns the HAL, connecting to it first if needed. Only called on the HAL thread, which
+     * makes this the single place the interface is (re)initialized after {@link #serviceDied}.
+     */
+    private IWirelessCharger getHalInterface() {
         if (mWirelessCharger == null) {
             try {
-                mWirelessCharger = vendor.google.wireless_charger.V1_3.IWirelessCharger.getService();
-                mWirelessCharger.linkToDeath(this, 0L);
+                IWirelessCharger hal = vendor.google.wireless_charger.V1_3.IWirelessCharger.getService();
+                hal.linkToDeath(this, 0L);
+                mWirelessCharger = hal;
+                mHalConnections.incrementAndGet();
             } catch (Exception e) {
                 Log.i("Dreamliner-WLC_HAL", "no wireless charger hal found: " + e.getMessage());
                 mWirelessCharger = null;
             }
         }
+        return mWirelessCharger;
+    }
+
+    private interface HalCall<T> {
+        void run(IWirelessCharger hal, CompletableFuture<T> result) throws Exception;
     }
 
     static final class GetFanSimpleInformationCallbackWrapper implements IWirelessCharger.getFanCallback {
@@ -422,7 +565,7 @@ public class WirelessChargerImpl implements WirelessCharger, IHwBinder.DeathReci
 
         @Override
         public void onValues(boolean z, byte b, byte b2, boolean z2, int i) {
-            mCallback.onCallback(z, b, b2, z2, i);
+            mHandler.post(() -> mCallback.onCallback(z, b, b2, z2, i));
         }
     }
 
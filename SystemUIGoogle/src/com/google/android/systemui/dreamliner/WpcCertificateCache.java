@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.dreamliner;
+
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Persists WPC certificate chains that have been read from a dock and verified against the slot
+ * digest the dock reported, so that later placements on the same dock can serve
+ * GET_WPC_CERTIFICATE chunks from memory instead of the in-band WLC channel.
+ *
+ * Entries are keyed by dock id, slot and digest. Reporting a different digest for a dock slot
+ * drops the stale chain. The cache holds at most {@link #MAX_ENTRIES} chains, evicting the least
+ * recently used, and is written with {@link AtomicFile} on the background executor.
+ */
+class WpcCertificateCache {
+    private static final String TAG = "DLObserver";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    private static final String FILE_NAME = "dreamliner_wpc_certificates";
+    private static final int FILE_VERSION = 1;
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 8;
+    // The chain starts with its own total length as a big-endian uint16.
+    private static final int CHAIN_LENGTH_FIELD_SIZE = 2;
+
+    private final AtomicFile mFile;
+    private final Executor mBackgroundExecutor;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    // Digests reported by the dock in the current session, by slot.
+    @GuardedBy("this")
+    private final SparseArray<byte[]> mSessionDigests = new SparseArray<>();
+    // Partially read chains in the current session, by slot.
+    @GuardedBy("this")
+    private final SparseArray<ChainAssembler> mAssemblers = new SparseArray<>();
+    @GuardedBy("this")
+    private boolean mLoaded;
+    @GuardedBy("this")
+    private int mHits;
+    @GuardedBy("this")
+    private int mMisses;
+    @GuardedBy("this")
+    private int mInvalidations;
+    @GuardedBy("this")
+    private int mStores;
+
+    WpcCertificateCache(File dir, Executor backgroundExecutor) {
+        mFile = new AtomicFile(new File(dir, FILE_NAME));
+        mBackgroundExecutor = backgroundExecutor;
+        mBackgroundExecutor.execute(this::load);
+    }
+
+    /** Forgets the digests and partial chains of the previous dock session. */
+    synchronized void onUndocked() {
+        mSessionDigests.clear();
+        mAssemblers.clear();
+    }
+
+    /**
+     * Records the digests returned for a GET_WPC_DIGESTS request. Digests are listed in ascending
+     * slot order for every bit set in {@code slotReturnedMask}.
+     */
+    void onDigests(int dockId, byte slotReturnedMask, ArrayList<byte[]> digests) {
+        if (digests == null) {
+            return;
+        }
+        boolean changed = false;
+        synchronized (this) {
+            int index = 0;
+            for (int slot = 0; slot < 8 && index < digests.size(); slot++) {
+                if ((slotReturnedMask & (1 << slot)) == 0) {
+                    continue;
+                }
+                byte[] digest = digests.get(index++);
+                byte[] previous = mSessionDigests.get(slot);
+                if (previous != null && !Arrays.equals(previous, digest)) {
+                    mAssemblers.remove(slot);
+                }
+                mSessionDigests.put(slot, digest);
+                changed |= invalidateLocked(dockId, slot, digest);
+            }
+        }
+        if (changed) {
+            scheduleWrite();
+        }
+    }
+
+    /** Returns the requested chunk of a cached chain, or null if it has to come from the dock. */
+    synchronized byte[] getChunk(int dockId, byte slot, short offset, short length) {
+        Entry entry = findLocked(dockId, slot);
+        if (entry == null || offset < 0 || length <= 0 || offset >= entry.chain.length) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return Arrays.copyOfRange(entry.chain, offset, Math.min(offset + length, entry.chain.length));
+    }
+
+    /** Collects a chunk read from the dock and stores the chain once it is complete and verified. */
+    void onChunk(int dockId, byte slot, short offset, byte[] chunk) {
+        if (dockId == 0 || chunk == null || chunk.length == 0) {
+            return;
+        }
+        boolean stored = false;
+        synchronized (this) {
+            byte[] digest = mSessionDigests.get(slot);
+            if (digest == null) {
+                return;
+            }
+            ChainAssembler assembler = mAssemblers.get(slot);
+            if (assembler == null || offset == 0) {
+                assembler = new ChainAssembler();
+                mAssemblers.put(slot, assembler);
+            }
+            byte[] chain = assembler.append(offset, chunk);
+            if (chain == null) {
+                return;
+            }
+            mAssemblers.remove(slot);
+            if (!Arrays.equals(sha256(chain), digest)) {
+                Log.w(TAG, "WPC chain for slot " + slot + " does not match its digest, not caching");
+                return;
+            }
+            mEntries.put(key(dockId, slot, digest), new Entry(dockId, slot, digest, chain));
+            trimLocked();
+            mStores++;
+            stored = true;
+        }
+        if (stored) {
+            scheduleWrite();
+        }
+    }
+
+    @GuardedBy("this")
+    private Entry findLocked(int dockId, byte slot) {
+        if (dockId == 0) {
+            return null;
+        }
+        byte[] digest = mSessionDigests.get(slot);
+        return digest == null ? null : mEntries.get(key(dockId, slot, digest));
+    }
+
+    @GuardedBy("this")
+    private boolean invalidateLocked(int dockId, int slot, byte[] digest) {
+        boolean changed = false;
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.dockId == dockId && entry.slot == slot && !Arrays.equals(entry.digest, digest)) {
+                it.remove();
+                mInvalidations++;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    @GuardedBy("this")
+    private void trimLocked() {
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (mEntries.size() > MAX_ENTRIES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void scheduleWrite() {
+        mBackgroundExecutor.execute(this::write);
+    }
+
+    private void load() {
+        ArrayList<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(mFile.openRead())) {
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("unknown version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int dockId = in.readInt();
+                int slot = in.readByte();
+                byte[] digest = new byte[in.readInt()];
+                in.readFully(digest);
+                byte[] chain = new byte[in.readInt()];
+                in.readFully(chain);
+                entries.add(new Entry(dockId, slot, digest, chain));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing cached yet.
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Dropping unreadable WPC certificate cache", e);
+            entries.clear();
+            mFile.delete();
+        }
+        synchronized (this) {
+            for (Entry entry : entries) {
+                mEntries.putIfAbsent(key(entry.dockId, entry.slot, entry.digest), entry);
+            }
+            trimLocked();
+            mLoaded = true;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "loaded " + entries.size() + " WPC chains");
+        }
+    }
+
+    private void write() {
+        ArrayList<Entry> entries;
+        synchronized (this) {
+            if (!mLoaded) {
+                // load() runs first on the same executor; this only guards against reordering.
+                return;
+            }
+            entries = new ArrayList<>(mEntries.values());
+        }
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeInt(entry.dockId);
+                out.writeByte(entry.slot);
+                out.writeInt(entry.digest.length);
+                out.write(entry.digest);
+                out.writeInt(entry.chain.length);
+                out.write(entry.chain);
+            }
+            out.flush();
+            mFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write WPC certificate cache", e);
+            mFile.failWrite(fos);
+        }
+    }
+
+    private static String key(int dockId, int slot, byte[] digest) {
+        StringBuilder sb = new StringBuilder().append(dockId).append(':').append(slot).append(':');
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        int lookups = mHits + mMisses;
+        pw.println("  WpcCertificateCache:");
+        pw.println("    entries=" + mEntries.size() + "/" + MAX_ENTRIES + ", loaded=" + mLoaded);
+        pw.println("    hits=" + mHits + ", misses=" + mMisses + ", hitRate="
+                + (lookups > 0 ? (100 * mHits / lookups) + "%" : "n/a"));
+        pw.println("    stores=" + mStores + ", invalidations=" + mInvalidations);
+    }
+
+    private static final class Entry {
+        final int dockId;
+        final int slot;
+        final byte[] digest;
+        final byte[] chain;
+
+        Entry(int dockId, int slot, byte[] digest, byte[] chain) {
+            this.dockId = dockId;
+            this.slot = slot;
+            this.digest = digest;
+            this.chain = chain;
+        }
+    }
+
+    /** Joins sequential certificate chunks until the length announced by the chain is reached. */
+    private static final class ChainAssembler {
+        private byte[] mBuffer = new byte[0];
+        private int mSize;
+
+        /** Returns the full chain once complete, otherwise null. */
+        byte[] append(int offset, byte[] chunk) {
+            if (offset != mSize) {
+                // Out of order or repeated chunk; start over from the next offset 0.
+                mSize = -1;
+                return null;
+            }
+            if (mSize + chunk.length > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mSize + chunk.length));
+            }
+            System.arraycopy(chunk, 0, mBuffer, mSize, chunk.length);
+            mSize += chunk.length;
+            if (mSize < CHAIN_LENGTH_FIELD_SIZE) {
+                return null;
+            }
+            int total = ((mBuffer[0] & 0xff) << 8) | (mBuffer[1] & 0xff);
+            if (total <= CHAIN_LENGTH_FIELD_SIZE || mSize < total) {
+                return null;
+            }
+            return Arrays.copyOf(mBuffer, total);
+        }
+    }
+}
@@ -84,33 +84,13 @@ class BatteryInfoBroadcast {
         }
         String action = intent.getAction();
         if (action.equals("android.intent.action.BATTERY_CHANGED") || action.equals("android.os.action.POWER_SAVE_MODE_CHANGED")) {
-            Intent createIntent = createIntent("PNW.batteryStatusChanged");
-            if ("android.intent.action.BATTERY_CHANGED".equals(action)) {
-                createIntent.putExtra("battery_changed_intent", intent);
-            }
             boolean z = true;
             int intExtra = intent.getIntExtra("status", 1);
             int intExtra2 = intent.getIntExtra("level", 0);
             if (intExtra != 5 && intExtra2 < 100) {
                 z = false;
             }
-            if (z) {
-                long elapsedRealtime = sBroadcastDelayFromBoot - SystemClock.elapsedRealtime();
-                if (elapsedRealtime > 0) {
-                    Log.d("BatteryInfoBroadcast", "cancel sendBroadcastToFetchUsageData when broadcastDelay is" + elapsedRealtime + "ms.");
-                } else {
-                    long currentTimeMillis = System.currentTimeMillis() / 3600000;
-                    if (isInTheDifferentInterval(currentTimeMillis)) {
-                        sendBroadcast(new Intent("settings.intelligence.battery.action.FETCH_BATTERY_USAGE_DATA").setComponent(new ComponentName("com.android.settings", "com.google.android.settings.fuelgauge.BatteryBroadcastReceiver")));
-                        mLastFullChargeHour = currentTimeMillis;
-                        Log.d("BatteryInfoBroadcast", "Fetch battery usage data for full charge status.");
-                    }
-                }
-            }
-            boolean isPowerSaveMode = mPowerManager.isPowerSaveMode();
-            createIntent.putExtra("battery_save", isPowerSaveMode);
-            sendBroadcast(createIntent);
-            Log.d("BatteryInfoBroadcast", "onReceive: " + action + " isPowerSaveMode: " + isPowerSaveMode);
+            sendBatteryStatusChanged(action, "android.intent.action.BATTERY_CHANGED".equals(action) ? intent : null, z);
         } else if (action.equals("android.bluetooth.adapter.action.STATE_CHANGED") 
             || action.equals("android.bluetooth.hearingaid.profile.action.CONNECTION_STATE_CHANGED") 
             || action.equals("android.bluetooth.headset.profile.action.CONNECTION_STATE_CHANGED") 
@@ -124,6 +104,30 @@ class BatteryInfoBroadcast {
         }
     }
 
+    private void sendBatteryStatusChanged(String action, Intent batteryChangedIntent, boolean fullyCharged) {
+        Intent createIntent = createIntent("PNW.batteryStatusChanged");
+        if (batteryChangedIntent != null) {
+            createIntent.putExtra("battery_changed_intent", batteryChangedIntent);
+        }
+        if (fullyCharged) {
+            long elapsedRealtime = sBroadcastDelayFromBoot - SystemClock.elapsedRealtime();
+            if (elapsedRealtime > 0) {
+                Log.d("BatteryInfoBroadcast", "cancel sendBroadcastToFetchUsageData when broadcastDelay is" + elapsedRealtime + "ms.");
+            } else {
+                long currentTimeMillis = System.currentTimeMillis() / 3600000;
+                if (isInTheDifferentInterval(currentTimeMillis)) {
+                    sendBroadcast(new Intent("settings.intelligence.battery.action.FETCH_BATTERY_USAGE_DATA").setComponent(new ComponentName("com.android.settings", "com.google.android.settings.fuelgauge.BatteryBroadcastReceiver")));
+                    mLastFullChargeHour = currentTimeMillis;
+                    Log.d("BatteryInfoBroadcast", "Fetch battery usage data for full charge status.");
+                }
+            }
+        }
+        boolean isPowerSaveMode = mPowerManager.isPowerSaveMode();
+        createIntent.putExtra("battery_save", isPowerSaveMode);
+        sendBroadcast(createIntent);
+        Log.d("BatteryInfoBroadcast", "onReceive: " + action + " isPowerSaveMode: " + isPowerSaveMode);
+    }
+
     public void sendBroadcast(Intent intent) {
         BroadcastSender broadcastSender = mBroadcastSender;
         if (broadcastSender != null && intent != null) {
@@ -134,4 +138,8 @@ class BatteryInfoBroadcast {
     void notifyBatteryStatusChanged(Intent intent) {
         sendBatteryChangeIntent(intent, "notifyBatteryStatusChanged");
     }
+
+    void notifyBatteryStatusChanged(BatteryStateHub.Snapshot snapshot) {
+        sendBatteryStatusChanged(Intent.ACTION_BATTERY_CHANGED, snapshot.getIntent(), snapshot.isFullyCharged());
+    }
 }
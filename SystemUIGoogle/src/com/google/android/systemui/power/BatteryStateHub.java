@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.power;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.android.systemui.Dumpable;
+import com.android.systemui.broadcast.BroadcastDispatcher;
+import com.android.systemui.dagger.SysUISingleton;
+import com.android.systemui.dagger.qualifiers.Background;
+import com.android.systemui.dump.DumpManager;
+
+import java.io.PrintWriter;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import javax.inject.Inject;
+
+/**
+ * Single owner of ACTION_BATTERY_CHANGED for the Google SystemUI components.
+ *
+ * The broadcast is received once, on the background thread, and parsed into an immutable
+ * {@link Snapshot}. Subscribers name the fields they care about and are only called when one of
+ * those fields changed; everyone else can read the latest snapshot without touching the sticky
+ * intent.
+ */
+@SysUISingleton
+public class BatteryStateHub implements Dumpable {
+    private static final String TAG = "BatteryStateHub";
+
+    public static final int FIELD_PLUGGED = 1 << 0;
+    public static final int FIELD_LEVEL = 1 << 1;
+    public static final int FIELD_STATUS = 1 << 2;
+    public static final int FIELD_TEMPERATURE = 1 << 3;
+    public static final int FIELD_DEFENDER = 1 << 4;
+    public static final int FIELD_VOLTAGE = 1 << 5;
+    // Set on a broadcast that changed none of the parsed fields, e.g. only current or charge.
+    public static final int FIELD_OTHER = 1 << 6;
+    // Subscribing to every field delivers every broadcast.
+    public static final int FIELD_ALL = FIELD_PLUGGED | FIELD_LEVEL | FIELD_STATUS
+            | FIELD_TEMPERATURE | FIELD_DEFENDER | FIELD_VOLTAGE | FIELD_OTHER;
+
+    public interface Listener {
+        /** Called with the new snapshot and the subset of subscribed fields that changed. */
+        void onBatteryStateChanged(Snapshot snapshot, int changedFields);
+    }
+
+    private final Context mContext;
+    private final CopyOnWriteArrayList<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                update(intent);
+            }
+        }
+    };
+
+    private volatile Snapshot mSnapshot;
+    private volatile long mBroadcasts;
+    private volatile long mDispatches;
+
+    @Inject
+    public BatteryStateHub(Context context, BroadcastDispatcher broadcastDispatcher,
+            @Background Handler bgHandler, DumpManager dumpManager) {
+        mContext = context;
+        broadcastDispatcher.registerReceiverWithHandler(mReceiver,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED), bgHandler);
+        // BroadcastDispatcher does not replay sticky broadcasts; seed from the sticky intent.
+        bgHandler.post(() -> {
+            if (mSnapshot == null) {
+                readStickyIntent();
+            }
+        });
+        dumpManager.registerDumpable(BatteryStateHub.class.getName(), this);
+    }
+
+    /** Returns the latest battery state, or null if the battery has never reported. */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        return snapshot != null ? snapshot : readStickyIntent();
+    }
+
+    /**
+     * Subscribes to changes of {@code fieldMask}. If a snapshot is already known the listener is
+     * called right away with all of its subscribed fields marked as changed.
+     */
+    public void addListener(int fieldMask, Executor executor, Listener listener) {
+        Subscription subscription = new Subscription(fieldMask, executor, listener);
+        mSubscriptions.add(subscription);
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            executor.execute(() -> listener.onBatteryStateChanged(snapshot, fieldMask));
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mSubscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    private Snapshot readStickyIntent() {
+        Intent intent = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (intent == null) {
+            return null;
+        }
+        return update(intent);
+    }
+
+    private synchronized Snapshot update(Intent intent) {
+        mBroadcasts++;
+        Snapshot previous = mSnapshot;
+        Snapshot snapshot = new Snapshot(intent);
+        mSnapshot = snapshot;
+        int changed = previous == null ? FIELD_ALL : snapshot.diff(previous);
+        if (changed == 0) {
+            changed = FIELD_OTHER;
+        }
+        for (Subscription subscription : mSubscriptions) {
+            int relevant = changed & subscription.fieldMask;
+            if (relevant != 0) {
+                mDispatches++;
+                subscription.executor.execute(
+                        () -> subscription.listener.onBatteryStateChanged(snapshot, relevant));
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("BatteryStateHub:");
+        pw.println("  snapshot=" + mSnapshot);
+        pw.println("  subscribers=" + mSubscriptions.size() + ", broadcasts=" + mBroadcasts
+                + ", dispatches=" + mDispatches);
+    }
+
+    private static final class Subscription {
+        final int fieldMask;
+        final Executor executor;
+        final Listener listener;
+
+        Subscription(int fieldMask, Executor executor, Listener listener) {
+            this.fieldMask = fieldMask;
+            this.executor = executor;
+            this.listener = listener;
+        }
+    }
+
+    /** Immutable, parsed view of one ACTION_BATTERY_CHANGED intent. */
+    public static final class Snapshot {
+        private final Intent mIntent;
+        private final int mPlugged;
+        private final int mLevel;
+        private final int mStatus;
+        private final int mTemperature;
+        private final int mVoltage;
+        private final int mHealth;
+
+        Snapshot(Intent intent) {
+            mIntent = intent;
+            mPlugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            mLevel = level < 0 || scale <= 0 ? -1 : Math.round(level * 100f / scale);
+            mStatus = intent.getIntExtra(BatteryManager.EXTRA_STATUS, BatteryManager.BATTERY_STATUS_UNKNOWN);
+            mTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+            mVoltage = intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0);
+            mHealth = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, BatteryManager.BATTERY_HEALTH_UNKNOWN);
+        }
+
+        /** The intent this snapshot was parsed from, for consumers that forward it as is. */
+        public Intent getIntent() {
+            return mIntent;
+        }
+
+        /** One of the BatteryManager.BATTERY_PLUGGED_* values, or 0 when unplugged. */
+        public int getPlugged() {
+            return mPlugged;
+        }
+
+        public boolean isPlugged() {
+            return mPlugged != 0;
+        }
+
+        public boolean isPluggedAc() {
+            return mPlugged == BatteryManager.BATTERY_PLUGGED_AC;
+        }
+
+        public boolean isWirelessCharging() {
+            return mPlugged == BatteryManager.BATTERY_PLUGGED_WIRELESS;
+        }
+
+        /** Battery level in percent, or -1 if unknown. */
+        public int getLevel() {
+            return mLevel;
+        }
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        /** Battery temperature in tenths of a degree Celsius. */
+        public int getTemperature() {
+            return mTemperature;
+        }
+
+        /** Whether charging is being limited by battery defender (reported as overheat health). */
+        public boolean isDefenderActive() {
+            return mHealth == BatteryManager.BATTERY_HEALTH_OVERHEAT;
+        }
+
+        public boolean isFullyCharged() {
+            return mStatus == BatteryManager.BATTERY_STATUS_FULL || mLevel >= 100;
+        }
+
+        int diff(Snapshot other) {
+            int changed = 0;
+            if (mPlugged != other.mPlugged) {
+                changed |= FIELD_PLUGGED;
+            }
+            if (mLevel != other.mLevel) {
+                changed |= FIELD_LEVEL;
+            }
+            if (mStatus != other.mStatus) {
+                changed |= FIELD_STATUS;
+            }
+            if (mTemperature != other.mTemperature) {
+                changed |= FIELD_TEMPERATURE;
+            }
+            if (mHealth != other.mHealth) {
+                changed |= FIELD_DEFENDER;
+            }
+            if (mVoltage != other.mVoltage) {
+                changed |= FIELD_VOLTAGE;
+            }
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{plugged=" + mPlugged + ", level=" + mLevel + ", status=" + mStatus
+                    + ", temperature=" + mTemperature + ", voltage=" + mVoltage + ", health=" + mHealth + "}";
+        }
+    }
+}
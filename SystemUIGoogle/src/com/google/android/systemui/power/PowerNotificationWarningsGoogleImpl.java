@@ -62,7 +62,8 @@ public final class PowerNotificationWarningsGoogleImpl extends PowerNotification
             UiEventLogger uiEventLogger,
             UserTracker userTracker,
             SystemUIDialog.Factory systemUIDialogFactory,
-            BroadcastDispatcher broadcastDispatcher) {
+            BroadcastDispatcher broadcastDispatcher,
+            BatteryStateHub batteryStateHub) {
         super(context, activityStarter, broadcastSender, batteryControllerLazy, dialogTransitionAnimator, uiEventLogger, userTracker, systemUIDialogFactory);
         Handler handler = new Handler(Looper.getMainLooper());
         mHandler = handler;
@@ -85,7 +86,6 @@ public final class PowerNotificationWarningsGoogleImpl extends PowerNotification
             mAdaptiveChargingNotification = new AdaptiveChargingNotification(context);
             mBatteryInfoBroadcast = new BatteryInfoBroadcast(context, broadcastSender);
             IntentFilter intentFilter = new IntentFilter();
-            intentFilter.addAction("android.intent.action.BATTERY_CHANGED");
             intentFilter.addAction("PNW.defenderResumeCharging");
             intentFilter.addAction("PNW.defenderResumeCharging.settings");
             intentFilter.addAction("android.os.action.POWER_SAVE_MODE_CHANGED");
@@ -99,11 +99,25 @@ public final class PowerNotificationWarningsGoogleImpl extends PowerNotification
             intentFilter.addAction("android.bluetooth.headset.profile.action.CONNECTION_STATE_CHANGED");
             intentFilter.addAction("android.bluetooth.hearingaid.profile.action.CONNECTION_STATE_CHANGED");
             mBroadcastDispatcher.registerReceiverWithHandler(mBroadcastReceiver, intentFilter, mHandler);
-            Intent registerReceiver = context.registerReceiver(null, new IntentFilter("android.intent.action.BATTERY_CHANGED"));
-            if (registerReceiver != null) {
-                mBroadcastReceiver.onReceive(context, registerReceiver);
-            }
+            // Battery state comes from the shared hub, which replays the current state on subscribe.
+            // Settings intelligence gets every BATTERY_CHANGED, the notifications only what they use.
+            batteryStateHub.addListener(BatteryStateHub.FIELD_ALL, mHandler::post,
+                    (snapshot, changedFields) -> mBatteryInfoBroadcast.notifyBatteryStatusChanged(snapshot));
+            batteryStateHub.addListener(BatteryStateHub.FIELD_PLUGGED | BatteryStateHub.FIELD_LEVEL
+                    | BatteryStateHub.FIELD_STATUS | BatteryStateHub.FIELD_DEFENDER,
+                    mHandler::post, this::onBatteryStateChanged);
             Log.d("PowerNotificationWarningsGoogleImpl", String.format("Finish initialize in %d/ms", System.currentTimeMillis() - currentTimeMillis));
         });
     }
+
+    private void onBatteryStateChanged(BatteryStateHub.Snapshot snapshot, int changedFields) {
+        if (DEBUG) {
+            Log.d("PowerNotificationWarningsGoogleImpl", "onBatteryStateChanged: " + changedFields);
+        }
+        mBatteryDefenderNotification.onBatteryStateChanged(snapshot);
+        if ((changedFields & (BatteryStateHub.FIELD_PLUGGED | BatteryStateHub.FIELD_LEVEL
+                | BatteryStateHub.FIELD_STATUS)) != 0) {
+            mAdaptiveChargingNotification.onBatteryStateChanged(snapshot);
+        }
+    }
 }
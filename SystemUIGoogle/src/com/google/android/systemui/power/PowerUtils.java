@@ -53,19 +53,6 @@ public final class PowerUtils {
         return j > 0 && Clock.systemUTC().millis() - j >= 600000;
     }
 
-    static int getBatteryLevel(Intent intent) {
-        int intExtra = intent.getIntExtra("level", -1);
-        int intExtra2 = intent.getIntExtra("scale", 0);
-        if (intExtra2 == 0) {
-            return -1;
-        }
-        return Math.round((intExtra / intExtra2) * 100.0f);
-    }
-
-    static boolean isFullyCharged(Intent intent) {
-        return (intent.getIntExtra("status", 1) == 5) || getBatteryLevel(intent) >= 100;
-    }
-
     static String getCurrentTime(Context context, long j) {
         Locale locale = getLocale(context);
         return DateFormat.format(DateFormat.getBestDateTimePattern(locale, DateFormat.is24HourFormat(context) ? "HH:mm" : "h:m"), j).toString().toUpperCase(locale);
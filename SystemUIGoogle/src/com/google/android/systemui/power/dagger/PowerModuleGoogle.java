@@ -32,6 +32,7 @@ import com.android.systemui.settings.UserTracker;
 import com.android.systemui.statusbar.phone.SystemUIDialog;
 import com.android.systemui.statusbar.policy.BatteryController;
 import com.android.systemui.util.settings.GlobalSettings;
+import com.google.android.systemui.power.BatteryStateHub;
 import com.google.android.systemui.power.EnhancedEstimatesGoogleImpl;
 import com.google.android.systemui.power.PowerNotificationWarningsGoogleImpl;
 
@@ -61,8 +62,9 @@ public interface PowerModuleGoogle {
             UiEventLogger uiEventLogger,
             UserTracker userTracker,
             SystemUIDialog.Factory systemUIDialogFactory,
-            BroadcastDispatcher broadcastDispatcher) {
-        return new PowerNotificationWarningsGoogleImpl(context, activityStarter, broadcastSender, batteryControllerLazy, dialogTransitionAnimator, uiEventLogger, userTracker, systemUIDialogFactory, broadcastDispatcher);
+            BroadcastDispatcher broadcastDispatcher,
+            BatteryStateHub batteryStateHub) {
+        return new PowerNotificationWarningsGoogleImpl(context, activityStarter, broadcastSender, batteryControllerLazy, dialogTransitionAnimator, uiEventLogger, userTracker, systemUIDialogFactory, broadcastDispatcher, batteryStateHub);
     }
 
     /**
@@ -19,11 +19,7 @@ package com.google.android.systemui.qs.tiles;
 import android.content.Intent;
 import android.database.ContentObserver;
 import android.os.Handler;
-import android.os.IThermalEventListener;
-import android.os.IThermalService;
 import android.os.Looper;
-import android.os.RemoteException;
-import android.os.Temperature;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.View;
@@ -43,6 +39,7 @@ import com.android.systemui.plugins.FalsingManager;
 import com.android.systemui.plugins.qs.QSTile;
 import com.android.systemui.plugins.statusbar.StatusBarStateController;
 import com.android.systemui.statusbar.policy.BatteryController;
+import com.google.android.systemui.reversecharging.SkinThermalMonitor;
 
 import javax.inject.Inject;
 
@@ -56,17 +53,17 @@ public class ReverseChargingTile extends QSTileImpl<QSTile.BooleanState> impleme
     private boolean mOverHeat;
     private boolean mPowerSave;
     private boolean mReverse;
-    private final IThermalService mThermalService;
+    private final SkinThermalMonitor mSkinThermalMonitor;
     private int mThresholdLevel;
     private final QSTile.Icon mIcon = QSTileImpl.ResourceIcon.get(R.drawable.ic_qs_reverse_charging);
-    private final IThermalEventListener mThermalEventListener = new IThermalEventListener.Stub() {
+    private final SkinThermalMonitor.Listener mOverheatListener = new SkinThermalMonitor.Listener() {
         @Override
-        public void notifyThrottling(Temperature temperature) {
-            int status = temperature.getStatus();
-            mOverHeat = status >= 5;
+        public void onOverheatChanged(boolean overheat) {
+            mOverHeat = overheat;
             if (ReverseChargingTile.DEBUG) {
-                Log.d("ReverseChargingTile", "notifyThrottling(): status=" + status);
+                Log.d("ReverseChargingTile", "onOverheatChanged(): overheat=" + overheat);
             }
+            refreshState(null);
         }
     };
     private final ContentObserver mSettingsObserver = new ContentObserver(mHandler) {
@@ -82,11 +79,11 @@ public class ReverseChargingTile extends QSTileImpl<QSTile.BooleanState> impleme
     }
 
     @Inject
-    public ReverseChargingTile(QSHost qSHost, QsEventLogger qsEventLogger, @Background Looper looper, @Main Handler handler, FalsingManager falsingManager, MetricsLogger metricsLogger, StatusBarStateController statusBarStateController, ActivityStarter activityStarter, QSLogger qSLogger, BatteryController batteryController, IThermalService iThermalService) {
+    public ReverseChargingTile(QSHost qSHost, QsEventLogger qsEventLogger, @Background Looper looper, @Main Handler handler, FalsingManager falsingManager, MetricsLogger metricsLogger, StatusBarStateController statusBarStateController, ActivityStarter activityStarter, QSLogger qSLogger, BatteryController batteryController, SkinThermalMonitor skinThermalMonitor) {
         super(qSHost, qsEventLogger, looper, handler, falsingManager, metricsLogger, statusBarStateController, activityStarter, qSLogger);
         mBatteryController = batteryController;
         batteryController.observe(getLifecycle(), this);
-        mThermalService = iThermalService;
+        mSkinThermalMonitor = skinThermalMonitor;
     }
 
     public QSTile.BooleanState newTileState() {
@@ -106,19 +103,11 @@ public class ReverseChargingTile extends QSTileImpl<QSTile.BooleanState> impleme
             if (z) {
                 updateThresholdLevel();
                 mContext.getContentResolver().registerContentObserver(Settings.Global.getUriFor("advanced_battery_usage_amount"), false, mSettingsObserver);
-                try {
-                    mThermalService.registerThermalEventListenerWithType(mThermalEventListener, 3);
-                } catch (RemoteException e) {
-                    Log.e("ReverseChargingTile", "Could not register thermal event listener, exception: " + e);
-                }
-                mOverHeat = isOverHeat();
+                mSkinThermalMonitor.addListener(mHandler::post, mOverheatListener);
+                mOverHeat = mSkinThermalMonitor.isOverheat();
             } else {
                 mContext.getContentResolver().unregisterContentObserver(mSettingsObserver);
-                try {
-                    mThermalService.unregisterThermalEventListener(mThermalEventListener);
-                } catch (RemoteException e2) {
-                    Log.e("ReverseChargingTile", "Could not unregister thermal event listener, exception: " + e2);
-                }
+                mSkinThermalMonitor.removeListener(mOverheatListener);
             }
             if (DEBUG) {
                 Log.d("ReverseChargingTile", "handleSetListening(): rtx=" + (mReverse ? 1 : 0) + ",level=" + mBatteryLevel + ",threshold=" + mThresholdLevel + ",listening=" + z);
@@ -228,19 +217,4 @@ public class ReverseChargingTile extends QSTileImpl<QSTile.BooleanState> impleme
             Log.d("ReverseChargingTile", "updateThresholdLevel(): rtx=" + (mReverse ? 1 : 0) + ",level=" + mBatteryLevel + ",threshold=" + mThresholdLevel);
         }
     }
-
-    private boolean isOverHeat() {
-        try {
-            Temperature[] currentTemperaturesWithType = mThermalService.getCurrentTemperaturesWithType(3);
-            for (Temperature temperature : currentTemperaturesWithType) {
-                if (temperature.getStatus() >= 5) {
-                    Log.w("ReverseChargingTile", "isOverHeat(): current skin status = " + temperature.getStatus() + ", temperature = " + temperature.getValue());
-                    return true;
-                }
-            }
-        } catch (RemoteException e) {
-            Log.w("ReverseChargingTile", "isOverHeat(): " + e);
-        }
-        return false;
-    }
 }
@@ -23,34 +23,33 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
-import android.media.Ringtone;
-import android.media.RingtoneManager;
-import android.net.Uri;
 import android.nfc.NfcAdapter;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.IBinder;
-import android.os.IThermalEventListener;
-import android.os.IThermalService;
-import android.os.RemoteException;
 import android.os.ServiceManager;
-import android.os.SystemClock;
 import android.os.SystemProperties;
-import android.os.Temperature;
-import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+
+import com.android.systemui.Dumpable;
 import com.android.systemui.dagger.qualifiers.Background;
 import com.android.systemui.dagger.qualifiers.Main;
 import com.android.systemui.BootCompleteCache;
 import com.android.systemui.res.R;
 import com.android.systemui.broadcast.BroadcastDispatcher;
 import com.android.systemui.dagger.SysUISingleton;
+import com.android.systemui.dump.DumpManager;
 import com.android.systemui.statusbar.policy.BatteryController;
 import com.android.systemui.statusbar.policy.CallbackController;
+import com.android.systemui.util.concurrency.DelayableExecutor;
+import com.android.systemui.util.time.SystemClock;
+import com.google.android.systemui.power.BatteryStateHub;
 import com.google.android.systemui.reversecharging.ReverseWirelessCharger;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.concurrent.Executor;
@@ -61,7 +60,7 @@ import javax.inject.Inject;
 import dagger.Lazy;
 
 @SysUISingleton
-public class ReverseChargingController extends BroadcastReceiver implements CallbackController<ReverseChargingChangeCallback> {
+public class ReverseChargingController extends BroadcastReceiver implements CallbackController<ReverseChargingChangeCallback>, Dumpable {
     private static final boolean DEBUG = Log.isLoggable("ReverseChargingControl", 3);
     private static final long DURATION_TO_ADVANCED_ACCESSORY_DEVICE_RECONNECTED_TIME_OUT;
     private static final long DURATION_TO_ADVANCED_PHONE_RECONNECTED_TIME_OUT;
@@ -84,25 +83,33 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
     }
 
     final boolean mDoesNfcConflictWithUsbAudio;
-    final int[] mNfcUsbProductIds;
-    final int[] mNfcUsbVendorIds;
-    private final AlarmManager mAlarmManager;
-    private final @Background Executor mBgExecutor;
+    private final UsbAccessoryClassifier mUsbAccessoryClassifier;
+    private final RtxTimerScheduler mRtxTimers;
+    private final RtxAutoOffPredictor mAutoOffPredictor;
+    private final long mRtxInformationPollMs;
+    // Main thread only. Bumped on every start and stop, so a stale poll does not reschedule.
+    private int mRtxInformationPollGeneration;
+    private Runnable mCancelRtxInformationPoll;
+    private int mRtxInformationPolls;
+    private final SystemClock mSystemClock;
+    private final RtxSoundPlayer mSoundPlayer;
+    private final @Background DelayableExecutor mBgExecutor;
     private final BootCompleteCache mBootCompleteCache;
     private final BroadcastDispatcher mBroadcastDispatcher;
     private final Context mContext;
     private final boolean mDoesNfcConflictWithWlc;
     private final @Main Executor mMainExecutor;
     private final Optional<ReverseWirelessCharger> mRtxChargerManagerOptional;
-    private final IThermalService mThermalService;
+    private final SkinThermalMonitor mSkinThermalMonitor;
     private final Optional<UsbManager> mUsbManagerOptional;
+    private final BatteryStateHub mBatteryStateHub;
+    private final ReverseChargingSettings mSettings;
     private final IBinder mNfcInterfaceToken = new Binder();
     private final ArrayList<ReverseChargingChangeCallback> mChangeCallbacks = new ArrayList<>();
     boolean mBootCompleted;
     int mLevel;
     boolean mRestoreUsbNfcPollingMode;
     boolean mReverse;
-    IThermalEventListener mSkinThermalEventListener;
     int mCurrentRtxMode = 0;
     boolean mIsUsbPlugIn = false;
     private boolean mCacheIsReverseSupported;
@@ -111,16 +118,6 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
     private boolean mPluggedAc;
     private boolean mPowerSave;
     private boolean mRestoreWlcNfcPollingMode;
-    private final AlarmManager.OnAlarmListener mCheckNfcConflictWithUsbAudioAlarmAction = new AlarmManager.OnAlarmListener() {
-        @Override
-        public void onAlarm() {
-            if (mUsbManagerOptional.isPresent()) {
-                for (UsbDevice usbDevice : mUsbManagerOptional.get().getDeviceList().values()) {
-                    checkAndChangeNfcPollingAgainstUsbAudioDevice(false, usbDevice);
-                }
-            }
-        }
-    };
     private int mRtxLevel;
     private boolean mStartReconnected;
     private boolean mStopReverseAtAcUnplug;
@@ -135,6 +132,7 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
         @Override
         public void onWirelessChargingChanged(boolean z) {
             mWirelessCharging = z;
+            reevaluateBatteryPolicy();
         }
     };
 
@@ -150,82 +148,49 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
     };
     private int mCurrentRtxReceiverType = 0;
 
-    private final AlarmManager.OnAlarmListener mRtxFinishAlarmAction = new AlarmManager.OnAlarmListener() {
-        @Override
-        public void onAlarm() {
-            onAlarmRtxFinish(5);
-        }
-    };
     private boolean mProvidingBattery = false;
 
-    private final AlarmManager.OnAlarmListener mRtxFinishRxFullAlarmAction = new AlarmManager.OnAlarmListener() {
-        @Override
-        public void onAlarm() {
-            onAlarmRtxFinish(6);
-        }
-    };
-
     @Inject
-    public ReverseChargingController(Context context, BroadcastDispatcher broadcastDispatcher, Optional<ReverseWirelessCharger> optional, AlarmManager alarmManager, Optional<UsbManager> optional2, @Main Executor executor, @Background Executor executor2, BootCompleteCache bootCompleteCache, IThermalService iThermalService) {
+    public ReverseChargingController(Context context, BroadcastDispatcher broadcastDispatcher, Optional<ReverseWirelessCharger> optional, AlarmManager alarmManager, Optional<UsbManager> optional2, @Main Executor executor, @Background DelayableExecutor executor2, BootCompleteCache bootCompleteCache, SkinThermalMonitor skinThermalMonitor, BatteryStateHub batteryStateHub, DumpManager dumpManager, SystemClock systemClock) {
         mContext = context;
         mBroadcastDispatcher = broadcastDispatcher;
         mRtxChargerManagerOptional = optional;
-        mAlarmManager = alarmManager;
+        mSystemClock = systemClock;
+        mSoundPlayer = new RtxSoundPlayer(executor2, systemClock);
+        mRtxTimers = new RtxTimerScheduler(alarmManager, systemClock, this::onRtxTimerExpired);
+        mAutoOffPredictor = new RtxAutoOffPredictor(
+                context.getResources().getInteger(R.integer.config_rtx_auto_off_confidence_pct),
+                context.getResources().getInteger(R.integer.config_rtx_auto_off_idle_current_ma),
+                context.getResources().getInteger(R.integer.config_rtx_auto_off_idle_window_ms));
+        mRtxInformationPollMs = context.getResources().getInteger(R.integer.config_rtx_auto_off_poll_interval_ms);
         mDoesNfcConflictWithWlc = context.getResources().getBoolean(R.bool.config_nfc_conflict_with_wlc);
         mUsbManagerOptional = optional2;
         mMainExecutor = executor;
         mBgExecutor = executor2;
         mBootCompleteCache = bootCompleteCache;
-        mThermalService = iThermalService;
-        int[] intArray = context.getResources().getIntArray(R.array.config_nfc_conflict_with_usb_audio_vendorid);
-        mNfcUsbVendorIds = intArray;
-        int[] intArray2 = context.getResources().getIntArray(R.array.config_nfc_conflict_with_usb_audio_productid);
-        mNfcUsbProductIds = intArray2;
-        if (intArray.length != intArray2.length) {
-            throw new IllegalStateException("VendorIds and ProductIds must be the same length");
-        }
+        mSkinThermalMonitor = skinThermalMonitor;
+        mBatteryStateHub = batteryStateHub;
+        mSettings = new ReverseChargingSettings(context.getContentResolver(), executor2,
+                () -> mMainExecutor.execute(this::reevaluateBatteryPolicy));
+        mUsbAccessoryClassifier = new UsbAccessoryClassifier(
+                context.getResources().getIntArray(R.array.config_nfc_conflict_with_usb_audio_vendorid),
+                context.getResources().getIntArray(R.array.config_nfc_conflict_with_usb_audio_productid));
         mDoesNfcConflictWithUsbAudio = context.getResources().getBoolean(R.bool.config_nfc_conflict_with_usb_audio);
+        dumpManager.registerDumpable(ReverseChargingController.class.getName(), this);
     }
 
     private boolean shouldEnableAccessoryReconnect(int i) {
         return i == 16 || i == 90 || i == 114;
     }
 
-    private final AlarmManager.OnAlarmListener mReconnectedTimeoutAlarmAction = new AlarmManager.OnAlarmListener() {
-        @Override
-        public void onAlarm() {
-            if (DEBUG) {
-                Log.w("ReverseChargingControl", "mReConnectedTimeoutAlarmAction() timeout");
-            }
-            mStartReconnected = false;
-            onAlarmRtxFinish(6);
-        }
-    };
-
     private void checkAndChangeNfcPollingAgainstUsbAudioDevice(boolean z, UsbDevice usbDevice) {
-        boolean z2 = false;
-        for (int i = 0; i < mNfcUsbVendorIds.length; i++) {
-            if (usbDevice.getVendorId() == mNfcUsbVendorIds[i] && usbDevice.getProductId() == mNfcUsbProductIds[i]) {
-                mRestoreUsbNfcPollingMode = !z;
-                if (!mRestoreWlcNfcPollingMode && z) {
-                    z2 = true;
-                }
-                enableNfcPollingMode(z2);
-                return;
-            }
+        if (!mUsbAccessoryClassifier.conflictsWithNfc(usbDevice)) {
+            return;
         }
+        mRestoreUsbNfcPollingMode = !z;
+        enableNfcPollingMode(!mRestoreWlcNfcPollingMode && z);
     }
 
-    private final AlarmManager.OnAlarmListener mAccessoryDeviceRemovedTimeoutAlarmAction = new AlarmManager.OnAlarmListener() {
-        @Override
-        public void onAlarm() {
-            if (DEBUG) {
-                Log.w("ReverseChargingControl", "mAccessoryDeviceRemovedTimeoutAlarmAction() timeout");
-            }
-            onAlarmRtxFinish(6);
-        }
-    };
-
     private void registerReceiver() {
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction("android.hardware.usb.action.USB_DEVICE_ATTACHED");
@@ -235,12 +200,19 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
 
     public void init(BatteryController batteryController) {
         batteryController.addCallback(mBatteryStateChangeCallback);
+        mBatteryStateHub.addListener(BatteryStateHub.FIELD_PLUGGED | BatteryStateHub.FIELD_LEVEL,
+                mMainExecutor, this::onBatteryStateChanged);
         mCacheIsReverseSupported = false;
         resetReverseInfo();
+        mSettings.startObserving();
         registerReceiver();
         mBootCompleteCache.addListener(mBootCompleteListener);
         if (mRtxChargerManagerOptional.isPresent()) {
             setRtxMode(false);
+            String startSound = mContext.getString(R.string.reverse_charging_started_sound);
+            if (!TextUtils.isEmpty(startSound)) {
+                mSoundPlayer.preload(startSound);
+            }
             mRtxChargerManagerOptional.get().addIsDockPresentChangeListener(new ReverseWirelessCharger.IsDockPresentChangeListener() {
                 @Override
                 public void onDockPresentChanged(Bundle bundle) {
@@ -249,24 +221,17 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
             });
             mRtxChargerManagerOptional.get().addReverseChargingInformationChangeListener(new ReverseWirelessCharger.ReverseChargingInformationChangeListener() {
                 @Override
-                public void onReverseInformationChanged(Bundle bundle) {
-                    onReverseInformationChanged(bundle);
+                public void onReverseInformationChanged(RtxStatus status) {
+                    onReverseInformationChanged(status);
                 }
             });
             mRtxChargerManagerOptional.get().addReverseChargingChangeListener(new ReverseWirelessCharger.ReverseChargingChangeListener() {
                 @Override
-                public void onReverseStatusChanged(Bundle bundle) {
-                    onReverseStateChanged(bundle);
+                public void onReverseStatusChanged(RtxStatus status) {
+                    onReverseStateChanged(status);
                 }
             });
-            try {
-                if (mSkinThermalEventListener == null) {
-                    mSkinThermalEventListener = new SkinThermalEventListener();
-                }
-                mThermalService.registerThermalEventListenerWithType(mSkinThermalEventListener, 3);
-            } catch (RemoteException e) {
-                Log.e("ReverseChargingControl", "Could not register thermal event listener, exception: " + e);
-            }
+            mSkinThermalMonitor.addListener(mMainExecutor, this::onOverheatChanged);
         }
     }
 
@@ -277,52 +242,12 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
 
     public void handleIntentForReverseCharging(Intent intent) {
         UsbDevice usbDevice;
-        Object objArr;
-        Object objArr2;
         if (!isReverseSupported()) {
             return;
         }
         String action = intent.getAction();
         boolean z = true;
-        if (action.equals("android.intent.action.BATTERY_CHANGED")) {
-            boolean z2 = mPluggedAc;
-            mLevel = (int) ((intent.getIntExtra("level", 0) * 100.0f) / intent.getIntExtra("scale", 100));
-            int intExtra = intent.getIntExtra("plugged", 0);
-            mPluggedAc = intExtra == 1;
-            Log.i("ReverseChargingControl", "handleIntentForReverseCharging(): rtx=" + (mReverse ? 1 : 0) + " wlc=" + (mWirelessCharging ? 1 : 0) + " plgac=" + (z2 ? 1 : 0) + " ac=" + (mPluggedAc ? 1 : 0) + " acrtx=" + (mStopReverseAtAcUnplug ? 1 : 0) + " extra=" + intExtra + " this=" + this);
-            boolean z3 = mReverse;
-            if (z3 && mWirelessCharging) {
-                if (DEBUG) {
-                    Log.d("ReverseChargingControl", "handleIntentForReverseCharging(): wireless charging, stop");
-                }
-                setReverseStateInternal(false, 102);
-            } else if (z3 && z2 && !mPluggedAc && mStopReverseAtAcUnplug) {
-                if (DEBUG) {
-                    Log.d("ReverseChargingControl", "handleIntentForReverseCharging(): wired charging, stop");
-                }
-                mStopReverseAtAcUnplug = false;
-                setReverseStateInternal(false, 106);
-            } else if (!z3 && !z2 && mPluggedAc) {
-                boolean autoTurnOnEnabled = Settings.Global.getInt(this.mContext.getContentResolver(), "settings_key_reverse_charging_auto_turn_on", 0) == 1;
-                if (!autoTurnOnEnabled) {
-                    Log.d("ReverseChargingControl", "auto turn on is disabled");
-                } else if (!mBootCompleted) {
-                    Log.i("ReverseChargingControl", "skip auto turn on");
-                } else {
-                    if (DEBUG) {
-                        Log.d("ReverseChargingControl", "handleIntentForReverseCharging(): wired charging, start");
-                    }
-                    mStopReverseAtAcUnplug = true;
-                    setReverseStateInternal(true, 3);
-                }
-            } else if (!z3 || !isLowBattery()) {
-            } else {
-                if (DEBUG) {
-                    Log.d("ReverseChargingControl", "handleIntentForReverseCharging(): lower then battery threshold, stop");
-                }
-                setReverseStateInternal(false, 4);
-            }
-        } else if (action.equals("android.os.action.POWER_SAVE_MODE_CHANGED")) {
+        if (action.equals("android.os.action.POWER_SAVE_MODE_CHANGED")) {
             if (!mReverse || !mPowerSave) {
                 return;
             }
@@ -335,36 +260,13 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
                 mIsUsbPlugIn = false;
                 return;
             }
-            if (mDoesNfcConflictWithUsbAudio) {
-                checkAndChangeNfcPollingAgainstUsbAudioDevice(false, usbDevice2);
-            }
-            int i = 0;
-            while (true) {
-                if (i >= usbDevice2.getInterfaceCount()) {
-                    objArr = null;
-                    break;
-                } else if (usbDevice2.getInterface(i).getInterfaceClass() == 1) {
-                    objArr = 1;
-                    break;
-                } else {
-                    i++;
-                }
-            }
-            int i2 = 0;
-            while (true) {
-                if (i2 >= usbDevice2.getConfigurationCount()) {
-                    objArr2 = null;
-                    break;
-                } else if (usbDevice2.getConfiguration(i2).getMaxPower() < 100) {
-                    objArr2 = 1;
-                    break;
-                } else {
-                    i2++;
-                }
-            }
-            if (objArr != null && objArr2 != null) {
-                z = false;
+            int flags = mUsbAccessoryClassifier.classify(usbDevice2);
+            if (mDoesNfcConflictWithUsbAudio && (flags & UsbAccessoryClassifier.FLAG_NFC_CONFLICT) != 0) {
+                mRestoreUsbNfcPollingMode = true;
+                enableNfcPollingMode(false);
             }
+            // Low power audio accessories can stay plugged in while reverse charging.
+            z = (flags & UsbAccessoryClassifier.FLAG_LOW_POWER_AUDIO) == 0;
             mIsUsbPlugIn = z;
             if (!mReverse || !z) {
                 return;
@@ -380,8 +282,84 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
         }
     }
 
+    private void onBatteryStateChanged(BatteryStateHub.Snapshot snapshot, int changedFields) {
+        if (!isReverseSupported()) {
+            return;
+        }
+        boolean wasPluggedAc = mPluggedAc;
+        mLevel = snapshot.getLevel();
+        mPluggedAc = snapshot.isPluggedAc();
+        int inputs = 0;
+        if (mReverse) {
+            inputs |= ReverseChargingPolicy.IN_REVERSE;
+        }
+        // Read wireless charging from the same snapshot; BatteryController may not have seen it yet.
+        if (snapshot.isWirelessCharging()) {
+            inputs |= ReverseChargingPolicy.IN_WIRELESS_CHARGING;
+        }
+        if (mPluggedAc) {
+            inputs |= ReverseChargingPolicy.IN_AC_PLUGGED;
+        }
+        if (wasPluggedAc) {
+            inputs |= ReverseChargingPolicy.IN_AC_WAS_PLUGGED;
+        }
+        if (mStopReverseAtAcUnplug) {
+            inputs |= ReverseChargingPolicy.IN_STOP_AT_AC_UNPLUG;
+        }
+        if (mBootCompleted) {
+            inputs |= ReverseChargingPolicy.IN_BOOT_COMPLETED;
+        }
+        // Settings are only consulted when they can change the outcome.
+        if (ReverseChargingPolicy.needsAutoTurnOn(inputs) && mSettings.isAutoTurnOnEnabled()) {
+            inputs |= ReverseChargingPolicy.IN_AUTO_TURN_ON;
+        }
+        int action = ReverseChargingPolicy.evaluate(inputs);
+        if (action == ReverseChargingPolicy.ACTION_NONE && ReverseChargingPolicy.needsLowBattery(inputs) && isLowBattery()) {
+            inputs |= ReverseChargingPolicy.IN_LOW_BATTERY;
+            action = ReverseChargingPolicy.evaluate(inputs);
+        }
+        if (action == ReverseChargingPolicy.ACTION_NONE) {
+            if (DEBUG) {
+                Log.d("ReverseChargingControl", "onBatteryStateChanged(): no-op, inputs=" + inputs + " level=" + mLevel);
+            }
+            return;
+        }
+        Log.i("ReverseChargingControl", "onBatteryStateChanged(): inputs=" + inputs + " action=" + action + " plugged=" + snapshot.getPlugged() + " this=" + this);
+        switch (action) {
+            case ReverseChargingPolicy.ACTION_SKIP_AUTO_TURN_ON_DISABLED:
+                Log.d("ReverseChargingControl", "auto turn on is disabled");
+                break;
+            case ReverseChargingPolicy.ACTION_SKIP_NOT_BOOTED:
+                Log.i("ReverseChargingControl", "skip auto turn on");
+                break;
+            case ReverseChargingPolicy.ACTION_START_AC_PLUGGED:
+                mStopReverseAtAcUnplug = true;
+                setReverseStateInternal(true, ReverseChargingPolicy.reasonOf(action));
+                break;
+            case ReverseChargingPolicy.ACTION_STOP_AC_UNPLUGGED:
+                mStopReverseAtAcUnplug = false;
+                setReverseStateInternal(false, ReverseChargingPolicy.reasonOf(action));
+                break;
+            default:
+                setReverseStateInternal(false, ReverseChargingPolicy.reasonOf(action));
+                break;
+        }
+    }
+
+    /**
+     * Runs the battery policy on the current snapshot. The hub only reports plug and level
+     * changes, so inputs that change on their own, such as RTX turning on while wireless charging
+     * or the low battery threshold setting, need an explicit pass.
+     */
+    private void reevaluateBatteryPolicy() {
+        BatteryStateHub.Snapshot snapshot = mBatteryStateHub.getSnapshot();
+        if (snapshot != null) {
+            onBatteryStateChanged(snapshot, 0);
+        }
+    }
+
     private boolean isLowBattery() {
-        int i = Settings.Global.getInt(mContext.getContentResolver(), "advanced_battery_usage_amount", 2) * 5;
+        int i = mSettings.getLowBatteryThreshold();
         if (mLevel <= i) {
             Log.w("ReverseChargingControl", "The battery is lower than threshold turn off reverse charging ! level : " + mLevel + ", threshold : " + i);
             return true;
@@ -433,6 +411,10 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
                 return;
             } else if (mIsUsbPlugIn) {
                 return;
+            } else if (mSkinThermalMonitor.isOverheat()) {
+                // Overheat transitions only stop a running session, so refuse to start one here.
+                Log.i("ReverseChargingControl", "setReverseStateInternal(): overheat, refuse");
+                return;
             }
         }
         if (z == isReverseOn()) {
@@ -445,6 +427,8 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
         mReverse = z;
         if (z) {
             setRtxTimer(0, DURATION_TO_REVERSE_TIME_OUT);
+            // Posted, as this can run from within the policy pass itself.
+            mMainExecutor.execute(this::reevaluateBatteryPolicy);
         }
         setRtxMode(z);
     }
@@ -527,12 +511,12 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
         });
     }
 
-    private void onReverseInformationChanged(final Bundle bundle) {
+    private void onReverseInformationChanged(final RtxStatus status) {
         if (DEBUG) {
             StringBuilder sb = new StringBuilder();
             sb.append("onReverseInformationChanged(): rtx=");
             int i = 1;
-            if (bundle.getInt("key_rtx_mode") != 1) {
+            if (!status.isRtxOn()) {
                 i = 0;
             }
             sb.append(i);
@@ -540,13 +524,13 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
             sb.append(mWirelessCharging ? 1 : 0);
             sb.append(" mName=");
             sb.append(mName);
-            sb.append(" bundle=");
-            sb.append(bundle);
+            sb.append(" status=");
+            sb.append(status);
             sb.append(" this=");
             sb.append(this);
             Log.d("ReverseChargingControl", sb.toString());
         }
-        if (bundle.getInt("key_rtx_level") <= 0) {
+        if (status.getLevel() <= 0) {
             return;
         }
         mMainExecutor.execute(new Runnable() {
@@ -556,40 +540,44 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
                 if (DEBUG) {
                     StringBuilder sb = new StringBuilder();
                     sb.append("onReverseInformationChangedOnMainThread(): rtx=");
-                    sb.append(bundle.getInt("key_rtx_mode") == 1 ? 1 : 0);
+                    sb.append(status.isRtxOn() ? 1 : 0);
                     sb.append(" wlc=");
                     sb.append(mWirelessCharging ? 1 : 0);
                     sb.append(" mName=");
                     sb.append(mName);
-                    sb.append(" bundle=");
-                    sb.append(bundle);
+                    sb.append(" status=");
+                    sb.append(status);
                     sb.append(" this=");
                     sb.append(this);
                     Log.d("ReverseChargingControl", sb.toString());
                 }
+                if (mReverse && mProvidingBattery && status.isRtxOn()) {
+                    // A polled report of our own session; see updateRtxInformationPolling().
+                    updateAutoOffPrediction(status);
+                }
                 if (!mWirelessCharging || mName == null) {
                     return;
                 }
-                if (bundle.getInt("key_rtx_mode") == 1) {
+                if (status.isRtxOn()) {
                     z = true;
                 }
                 mReverse = z;
-                mRtxLevel = bundle.getInt("key_rtx_level");
+                mRtxLevel = status.getLevel();
                 fireReverseChanged();
             }
         });
     }
 
-    void onReverseStateChanged(final Bundle bundle) {
+    void onReverseStateChanged(final RtxStatus status) {
         StringBuilder sb = new StringBuilder();
         sb.append("onReverseStateChanged(): rtx=");
         int i = 1;
-        if (bundle.getInt("key_rtx_mode") != 1) {
+        if (!status.isRtxOn()) {
             i = 0;
         }
         sb.append(i);
-        sb.append(" bundle=");
-        sb.append(bundle);
+        sb.append(" status=");
+        sb.append(status);
         sb.append(" this=");
         sb.append(this);
         Log.i("ReverseChargingControl", sb.toString());
@@ -601,18 +589,18 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
                 if (z) {
                     StringBuilder sb = new StringBuilder();
                     sb.append("onReverseStateChangedOnMainThread(): rtx=");
-                    sb.append(bundle.getInt("key_rtx_mode") == 1 ? 1 : 0);
-                    sb.append(" bundle=");
-                    sb.append(bundle);
+                    sb.append(status.isRtxOn() ? 1 : 0);
+                    sb.append(" status=");
+                    sb.append(status);
                     sb.append(" this=");
                     sb.append(this);
                     Log.d("ReverseChargingControl", sb.toString());
                 }
-                int i2 = bundle.getInt("key_rtx_mode");
-                int i3 = bundle.getInt("key_reason_type");
-                boolean z2 = bundle.getBoolean("key_rtx_connection");
-                int i4 = bundle.getInt("key_accessory_type");
-                int i5 = bundle.getInt("key_rtx_level");
+                int i2 = status.getMode();
+                int i3 = status.getReason();
+                boolean z2 = status.isConnected();
+                int i4 = status.getAccessoryType();
+                int i5 = status.getLevel();
                 if (!mReverse && mWirelessCharging && i2 == 0 && i5 > 0) {
                     mRtxLevel = i5;
                     if (TextUtils.isEmpty(mName)) {
@@ -686,11 +674,67 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
                         }
                         setRtxTimer(1, 0L);
                     }
+                    updateAutoOffPrediction(status);
                 }
+                updateRtxInformationPolling();
             }
         });
     }
 
+    private void updateAutoOffPrediction(RtxStatus status) {
+        long now = mSystemClock.elapsedRealtime();
+        if (!mReverse) {
+            cancelRtxTimer(RtxTimerScheduler.TIMER_PREDICTED_END);
+            mAutoOffPredictor.onSessionEnd(now, status.getReason());
+            return;
+        }
+        // Without a receiver, or with a full one, the existing timeouts already apply.
+        int rxLevel = status.getLevel();
+        if (!mProvidingBattery || rxLevel < 0 || rxLevel >= 100) {
+            cancelRtxTimer(RtxTimerScheduler.TIMER_PREDICTED_END);
+            return;
+        }
+        long delay = mAutoOffPredictor.onStatus(now, status.getIout(), rxLevel);
+        if (delay == RtxAutoOffPredictor.NO_SHUTDOWN) {
+            cancelRtxTimer(RtxTimerScheduler.TIMER_PREDICTED_END);
+        } else {
+            setRtxTimer(RtxTimerScheduler.TIMER_PREDICTED_END, delay);
+        }
+    }
+
+    /**
+     * Polls the RTX information while a receiver is being charged. The HAL only reports status
+     * changes on its own, which says little about the output current trend the auto-off
+     * predictor needs; the polled reports come back through onReverseInformationChanged().
+     */
+    private void updateRtxInformationPolling() {
+        boolean poll = mReverse && mProvidingBattery && mRtxInformationPollMs > 0
+                && mRtxChargerManagerOptional.isPresent();
+        if (poll == (mCancelRtxInformationPoll != null)) {
+            return;
+        }
+        mRtxInformationPollGeneration++;
+        if (poll) {
+            scheduleRtxInformationPoll();
+        } else {
+            mCancelRtxInformationPoll.run();
+            mCancelRtxInformationPoll = null;
+        }
+    }
+
+    private void scheduleRtxInformationPoll() {
+        final int generation = mRtxInformationPollGeneration;
+        mCancelRtxInformationPoll = mBgExecutor.executeDelayed(() -> {
+            mRtxChargerManagerOptional.get().getRtxInformation();
+            mMainExecutor.execute(() -> {
+                if (generation == mRtxInformationPollGeneration) {
+                    mRtxInformationPolls++;
+                    scheduleRtxInformationPoll();
+                }
+            });
+        }, mRtxInformationPollMs);
+    }
+
     private void setRtxMode(final boolean z) {
         if (mRtxChargerManagerOptional.isPresent()) {
             mBgExecutor.execute(new Runnable() {
@@ -722,17 +766,42 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
     }
 
     private void setRtxTimer(int i, long j) {
-        if (i == 0) {
-            mAlarmManager.setExact(2, SystemClock.elapsedRealtime() + j, "ReverseChargingControl", mRtxFinishAlarmAction, null);
-        } else if (i == 1) {
-            mAlarmManager.setExact(2, SystemClock.elapsedRealtime() + j, "ReverseChargingControl", mRtxFinishRxFullAlarmAction, null);
-        } else if (i == 2) {
-            mAlarmManager.setExact(2, SystemClock.elapsedRealtime() + j, "ReverseChargingControl", mCheckNfcConflictWithUsbAudioAlarmAction, null);
-        } else if (i == 3) {
-            mAlarmManager.setExact(2, SystemClock.elapsedRealtime() + j, "ReverseChargingControl", mReconnectedTimeoutAlarmAction, null);
-        } else if (i != 4) {
-        } else {
-            mAlarmManager.setExact(2, SystemClock.elapsedRealtime() + j, "ReverseChargingControl", mAccessoryDeviceRemovedTimeoutAlarmAction, null);
+        mRtxTimers.set(i, j);
+    }
+
+    private void onRtxTimerExpired(int i) {
+        switch (i) {
+            case RtxTimerScheduler.TIMER_RTX_FINISH:
+                onAlarmRtxFinish(5);
+                break;
+            case RtxTimerScheduler.TIMER_RTX_FINISH_RX_FULL:
+                onAlarmRtxFinish(6);
+                break;
+            case RtxTimerScheduler.TIMER_CHECK_NFC_USB_AUDIO:
+                if (mUsbManagerOptional.isPresent()) {
+                    for (UsbDevice usbDevice : mUsbManagerOptional.get().getDeviceList().values()) {
+                        checkAndChangeNfcPollingAgainstUsbAudioDevice(false, usbDevice);
+                    }
+                }
+                break;
+            case RtxTimerScheduler.TIMER_RECONNECTED_TIMEOUT:
+                if (DEBUG) {
+                    Log.w("ReverseChargingControl", "mReConnectedTimeoutAlarmAction() timeout");
+                }
+                mStartReconnected = false;
+                onAlarmRtxFinish(6);
+                break;
+            case RtxTimerScheduler.TIMER_ACCESSORY_REMOVED_TIMEOUT:
+                if (DEBUG) {
+                    Log.w("ReverseChargingControl", "mAccessoryDeviceRemovedTimeoutAlarmAction() timeout");
+                }
+                onAlarmRtxFinish(6);
+                break;
+            case RtxTimerScheduler.TIMER_PREDICTED_END:
+                Log.i("ReverseChargingControl", "onRtxTimerExpired(): receiver predicted idle or full");
+                mAutoOffPredictor.onPredictedShutdown();
+                onAlarmRtxFinish(6);
+                break;
         }
     }
 
@@ -742,16 +811,7 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
     }
 
     private void cancelRtxTimer(int i) {
-        if (i == 0) {
-            mAlarmManager.cancel(mRtxFinishAlarmAction);
-        } else if (i == 1) {
-            mAlarmManager.cancel(mRtxFinishRxFullAlarmAction);
-        } else if (i == 3) {
-            mAlarmManager.cancel(mReconnectedTimeoutAlarmAction);
-        } else if (i != 4) {
-        } else {
-            mAlarmManager.cancel(mAccessoryDeviceRemovedTimeoutAlarmAction);
-        }
+        mRtxTimers.cancel(i);
     }
 
     private void playSoundIfNecessary(boolean z, int i) {
@@ -778,14 +838,7 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
             }
         }
         if (!TextUtils.isEmpty(str)) {
-            playSound(RingtoneManager.getRingtone(mContext, new Uri.Builder().scheme("file").appendPath(str).build()));
-        }
-    }
-
-    void playSound(Ringtone ringtone) {
-        if (ringtone != null) {
-            ringtone.setStreamType(1);
-            ringtone.play();
+            mSoundPlayer.play(str);
         }
     }
 
@@ -804,18 +857,25 @@ public class ReverseChargingController extends BroadcastReceiver implements Call
         }
     }
 
-    final class SkinThermalEventListener extends IThermalEventListener.Stub {
-        SkinThermalEventListener() {
-        }
+    @Override
+    public void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("ReverseChargingController:");
+        pw.println("  reverse=" + mReverse + ", rtxLevel=" + mRtxLevel + ", level=" + mLevel
+                + ", pluggedAc=" + mPluggedAc + ", stopAtAcUnplug=" + mStopReverseAtAcUnplug);
+        pw.println("  rtxInformationPollMs=" + mRtxInformationPollMs + ", polling="
+                + (mCancelRtxInformationPoll != null) + ", polls=" + mRtxInformationPolls);
+        mSettings.dump(pw);
+        mUsbAccessoryClassifier.dump(pw);
+        mRtxTimers.dump(pw);
+        mAutoOffPredictor.dump(pw);
+        mSoundPlayer.dump(pw);
+    }
 
-        public void notifyThrottling(Temperature temperature) {
-            int status = temperature.getStatus();
-            Log.i("ReverseChargingControl", "notifyThrottling(): thermal status=" + status);
-            ReverseChargingController reverseChargingController = ReverseChargingController.this;
-            if (!reverseChargingController.mReverse || status < 5) {
-                return;
-            }
-            reverseChargingController.setReverseStateInternal(false, 3);
+    private void onOverheatChanged(boolean overheat) {
+        Log.i("ReverseChargingControl", "onOverheatChanged(): overheat=" + overheat);
+        if (!mReverse || !overheat) {
+            return;
         }
+        setReverseStateInternal(false, 3);
     }
 }
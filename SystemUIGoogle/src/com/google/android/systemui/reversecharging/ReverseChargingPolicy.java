@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+/**
+ * Decides what a battery state change means for reverse charging.
+ *
+ * The caller packs the relevant conditions into a bit set of {@code IN_*} flags and looks the
+ * action up in a table built once from the rule chain in {@link #decide(int)}, so evaluating a
+ * battery tick is a single array load with no allocation or side effects.
+ */
+final class ReverseChargingPolicy {
+    static final int IN_REVERSE = 1 << 0;
+    static final int IN_WIRELESS_CHARGING = 1 << 1;
+    static final int IN_AC_PLUGGED = 1 << 2;
+    static final int IN_AC_WAS_PLUGGED = 1 << 3;
+    static final int IN_STOP_AT_AC_UNPLUG = 1 << 4;
+    static final int IN_AUTO_TURN_ON = 1 << 5;
+    static final int IN_BOOT_COMPLETED = 1 << 6;
+    static final int IN_LOW_BATTERY = 1 << 7;
+    private static final int INPUT_COUNT = 1 << 8;
+
+    static final int ACTION_NONE = 0;
+    static final int ACTION_STOP_WIRELESS_CHARGING = 1;
+    static final int ACTION_STOP_AC_UNPLUGGED = 2;
+    static final int ACTION_START_AC_PLUGGED = 3;
+    static final int ACTION_SKIP_AUTO_TURN_ON_DISABLED = 4;
+    static final int ACTION_SKIP_NOT_BOOTED = 5;
+    static final int ACTION_STOP_LOW_BATTERY = 6;
+
+    private static final byte[] TABLE = new byte[INPUT_COUNT];
+
+    static {
+        for (int inputs = 0; inputs < INPUT_COUNT; inputs++) {
+            TABLE[inputs] = (byte) decide(inputs);
+        }
+    }
+
+    private ReverseChargingPolicy() {
+    }
+
+    static int evaluate(int inputs) {
+        return TABLE[inputs & (INPUT_COUNT - 1)];
+    }
+
+    /** Whether IN_AUTO_TURN_ON and IN_BOOT_COMPLETED can affect the outcome for {@code inputs}. */
+    static boolean needsAutoTurnOn(int inputs) {
+        return (inputs & (IN_REVERSE | IN_AC_WAS_PLUGGED | IN_AC_PLUGGED)) == IN_AC_PLUGGED;
+    }
+
+    /** Whether IN_LOW_BATTERY can affect the outcome for {@code inputs}. */
+    static boolean needsLowBattery(int inputs) {
+        return (inputs & IN_REVERSE) != 0;
+    }
+
+    /** Maps an action to the reason code passed to setReverseStateInternal. */
+    static int reasonOf(int action) {
+        switch (action) {
+            case ACTION_STOP_WIRELESS_CHARGING:
+                return 102;
+            case ACTION_STOP_AC_UNPLUGGED:
+                return 106;
+            case ACTION_START_AC_PLUGGED:
+                return 3;
+            case ACTION_STOP_LOW_BATTERY:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    // Rules in priority order; only run while building TABLE.
+    @VisibleForTesting
+    static int decide(int inputs) {
+        boolean reverse = (inputs & IN_REVERSE) != 0;
+        boolean acPlugged = (inputs & IN_AC_PLUGGED) != 0;
+        boolean acWasPlugged = (inputs & IN_AC_WAS_PLUGGED) != 0;
+        if (reverse && (inputs & IN_WIRELESS_CHARGING) != 0) {
+            return ACTION_STOP_WIRELESS_CHARGING;
+        }
+        if (reverse && acWasPlugged && !acPlugged && (inputs & IN_STOP_AT_AC_UNPLUG) != 0) {
+            return ACTION_STOP_AC_UNPLUGGED;
+        }
+        if (!reverse && !acWasPlugged && acPlugged) {
+            if ((inputs & IN_AUTO_TURN_ON) == 0) {
+                return ACTION_SKIP_AUTO_TURN_ON_DISABLED;
+            }
+            if ((inputs & IN_BOOT_COMPLETED) == 0) {
+                return ACTION_SKIP_NOT_BOOTED;
+            }
+            return ACTION_START_AC_PLUGGED;
+        }
+        if (reverse && (inputs & IN_LOW_BATTERY) != 0) {
+            return ACTION_STOP_LOW_BATTERY;
+        }
+        return ACTION_NONE;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.provider.Settings;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cached view of the global settings the reverse charging decisions read on every battery tick.
+ *
+ * Values are loaded once and refreshed by a ContentObserver, so reads are plain field loads.
+ * Both settings live in Settings.Global, which is shared by all users; the observer is registered
+ * for every user so a change made from any profile is picked up.
+ */
+class ReverseChargingSettings {
+    static final String KEY_AUTO_TURN_ON = "settings_key_reverse_charging_auto_turn_on";
+    static final String KEY_BATTERY_USAGE_AMOUNT = "advanced_battery_usage_amount";
+
+    private static final int DEFAULT_BATTERY_USAGE_AMOUNT = 2;
+
+    private final ContentResolver mContentResolver;
+    private final Executor mBgExecutor;
+    private final Runnable mOnChanged;
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mBgExecutor.execute(() -> {
+                reload();
+                mOnChanged.run();
+            });
+        }
+    };
+
+    private volatile boolean mLoaded;
+    private volatile boolean mAutoTurnOn;
+    private volatile int mBatteryUsageAmount = DEFAULT_BATTERY_USAGE_AMOUNT;
+    private final AtomicLong mProviderQueries = new AtomicLong();
+    private final AtomicLong mQueriesAvoided = new AtomicLong();
+
+    /** {@code onChanged} runs on {@code bgExecutor} after a change has been loaded. */
+    ReverseChargingSettings(ContentResolver contentResolver, Executor bgExecutor, Runnable onChanged) {
+        mContentResolver = contentResolver;
+        mBgExecutor = bgExecutor;
+        mOnChanged = onChanged;
+    }
+
+    void startObserving() {
+        mContentResolver.registerContentObserver(Settings.Global.getUriFor(KEY_AUTO_TURN_ON),
+                false, mObserver, UserHandle.USER_ALL);
+        mContentResolver.registerContentObserver(Settings.Global.getUriFor(KEY_BATTERY_USAGE_AMOUNT),
+                false, mObserver, UserHandle.USER_ALL);
+        mBgExecutor.execute(this::reload);
+    }
+
+    boolean isAutoTurnOnEnabled() {
+        ensureLoaded();
+        return mAutoTurnOn;
+    }
+
+    /** Returns the low battery threshold in percent below which reverse charging stops. */
+    int getLowBatteryThreshold() {
+        ensureLoaded();
+        return mBatteryUsageAmount * 5;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            mQueriesAvoided.incrementAndGet();
+        } else {
+            reload();
+        }
+    }
+
+    private synchronized void reload() {
+        mAutoTurnOn = Settings.Global.getInt(mContentResolver, KEY_AUTO_TURN_ON, 0) == 1;
+        mBatteryUsageAmount = Settings.Global.getInt(mContentResolver, KEY_BATTERY_USAGE_AMOUNT,
+                DEFAULT_BATTERY_USAGE_AMOUNT);
+        mProviderQueries.addAndGet(2);
+        mLoaded = true;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("  ReverseChargingSettings:");
+        pw.println("    autoTurnOn=" + mAutoTurnOn + ", batteryUsageAmount=" + mBatteryUsageAmount
+                + ", loaded=" + mLoaded);
+        pw.println("    providerQueries=" + mProviderQueries.get()
+                + ", providerQueriesAvoided=" + mQueriesAvoided.get());
+    }
+}
@@ -20,22 +20,39 @@ import android.content.Context;
 import android.os.Bundle;
 import android.os.IHwBinder;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
-import java.util.ArrayList;
-import java.util.Iterator;
+
+import androidx.annotation.NonNull;
+
+import com.android.systemui.Dumpable;
+import com.android.systemui.dump.DumpManager;
+import com.google.android.systemui.power.BatteryStateHub;
+
+import java.io.PrintWriter;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import vendor.google.wireless_charger.V1_2.IWirelessCharger;
 import vendor.google.wireless_charger.V1_2.IWirelessChargerRtxStatusCallback;
 import vendor.google.wireless_charger.V1_2.RtxStatusInfo;
 
 
-public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.Stub implements IHwBinder.DeathRecipient {
+public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.Stub implements IHwBinder.DeathRecipient, Dumpable {
     private static final boolean DEBUG = Log.isLoggable("ReverseWirelessCharger", 3);
     private Context mContext;
-    private IWirelessCharger mWirelessCharger;
-    private final ArrayList<IsDockPresentCallback> mIsDockPresentCallbacks = new ArrayList<>();
-    private final ArrayList<RtxInformationCallback> mRtxInformationCallbacks = new ArrayList<>();
-    private final ArrayList<RtxStatusCallback> mRtxStatusCallbacks = new ArrayList<>();
-    private final Object mLock = new Object();
+    private final BatteryStateHub mBatteryStateHub;
+    private final RtxSessionTelemetry mSessionTelemetry = new RtxSessionTelemetry();
+    private volatile IWirelessCharger mWirelessCharger;
+    // A failed HAL lookup blocks the caller, so failures are retried with exponential backoff.
+    private static final long HAL_RETRY_MIN_MS = 1000;
+    private static final long HAL_RETRY_MAX_MS = 60000;
+    private long mHalRetryDelayMs = HAL_RETRY_MIN_MS;
+    private long mNextHalInitMs;
+    private int mHalInits;
+    private int mHalInitFailures;
+    private final CopyOnWriteArrayList<IsDockPresentCallback> mIsDockPresentCallbacks = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<RtxInformationCallback> mRtxInformationCallbacks = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<RtxStatusCallback> mRtxStatusCallbacks = new CopyOnWriteArrayList<>();
     private final LocalRtxInformationCallback mLocalRtxInformationCallback = new LocalRtxInformationCallback();
 
     public interface IsDockPresentCallback {
@@ -50,8 +67,10 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
         void onRtxStatusChanged(RtxStatusInfo rtxStatusInfo);
     }
 
-    public ReverseWirelessCharger(Context context) {
+    public ReverseWirelessCharger(Context context, BatteryStateHub batteryStateHub, DumpManager dumpManager) {
         mContext = context;
+        mBatteryStateHub = batteryStateHub;
+        dumpManager.registerDumpable(ReverseWirelessCharger.class.getName(), this);
     }
 
     private static Bundle buildDockPresentBundle(boolean z, byte b, byte b2, boolean z2, int i) {
@@ -64,32 +83,35 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
         return bundle;
     }
 
-    private static Bundle buildReverseStatusBundle(RtxStatusInfo rtxStatusInfo) {
-        Bundle bundle = new Bundle();
-        bundle.putInt("key_rtx_mode", rtxStatusInfo.mode);
-        bundle.putInt("key_accessory_type", rtxStatusInfo.acctype);
-        bundle.putBoolean("key_rtx_connection", rtxStatusInfo.chg_s);
-        bundle.putInt("key_rtx_iout", rtxStatusInfo.iout);
-        bundle.putInt("key_rtx_vout", rtxStatusInfo.vout);
-        bundle.putInt("key_rtx_level", rtxStatusInfo.level);
-        bundle.putInt("key_reason_type", rtxStatusInfo.reason);
-        return bundle;
-    }
-
-    public void serviceDied(long j) {
+    public synchronized void serviceDied(long j) {
         Log.i("ReverseWirelessCharger", "serviceDied");
         mWirelessCharger = null;
+        mHalRetryDelayMs = HAL_RETRY_MIN_MS;
+        mNextHalInitMs = 0;
     }
 
     private void initHALInterface() {
-        if (mWirelessCharger == null) {
+        if (mWirelessCharger != null) {
+            return;
+        }
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (mWirelessCharger != null || now < mNextHalInitMs) {
+                return;
+            }
+            mHalInits++;
             try {
-                mWirelessCharger = IWirelessCharger.getService();
-                mWirelessCharger.linkToDeath(this, 0L);
-                mWirelessCharger.registerRtxCallback(this);
+                IWirelessCharger wirelessCharger = IWirelessCharger.getService();
+                wirelessCharger.linkToDeath(this, 0L);
+                wirelessCharger.registerRtxCallback(this);
+                mWirelessCharger = wirelessCharger;
+                mHalRetryDelayMs = HAL_RETRY_MIN_MS;
             } catch (Exception e) {
                 Log.i("ReverseWirelessCharger", "no wireless charger hal found: " + e.getMessage(), e);
                 mWirelessCharger = null;
+                mHalInitFailures++;
+                mNextHalInitMs = now + mHalRetryDelayMs;
+                mHalRetryDelayMs = Math.min(mHalRetryDelayMs * 2, HAL_RETRY_MAX_MS);
             }
         }
     }
@@ -107,9 +129,7 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     public void addIsDockPresentCallback(IsDockPresentCallback isDockPresentCallback) {
-        synchronized (mLock) {
-            mIsDockPresentCallbacks.add(isDockPresentCallback);
-        }
+        mIsDockPresentCallbacks.add(isDockPresentCallback);
     }
 
     public void addIsDockPresentChangeListener(IsDockPresentChangeListener isDockPresentChangeListener) {
@@ -117,13 +137,8 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     private void dispatchIsDockPresentCallbacks(boolean z, byte b, byte b2, boolean z2, int i) {
-        ArrayList arrayList;
-        synchronized (mLock) {
-            arrayList = new ArrayList(mIsDockPresentCallbacks);
-        }
-        Iterator it = arrayList.iterator();
-        while (it.hasNext()) {
-            ((IsDockPresentCallback) it.next()).onIsDockPresentChanged(z, b, b2, z2, i);
+        for (IsDockPresentCallback callback : mIsDockPresentCallbacks) {
+            callback.onIsDockPresentChanged(z, b, b2, z2, i);
         }
     }
 
@@ -139,9 +154,7 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     public void addRtxInformationCallback(RtxInformationCallback rtxInformationCallback) {
-        synchronized (mLock) {
-            mRtxInformationCallbacks.add(rtxInformationCallback);
-        }
+        mRtxInformationCallbacks.add(rtxInformationCallback);
     }
 
     public void addReverseChargingInformationChangeListener(ReverseChargingInformationChangeListener reverseChargingInformationChangeListener) {
@@ -149,13 +162,8 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     private void dispatchRtxInformationCallbacks(RtxStatusInfo rtxStatusInfo) {
-        ArrayList arrayList;
-        synchronized (mLock) {
-            arrayList = new ArrayList(mRtxInformationCallbacks);
-        }
-        Iterator it = arrayList.iterator();
-        while (it.hasNext()) {
-            ((RtxInformationCallback) it.next()).onRtxInformationChanged(rtxStatusInfo);
+        for (RtxInformationCallback callback : mRtxInformationCallbacks) {
+            callback.onRtxInformationChanged(rtxStatusInfo);
         }
     }
 
@@ -171,9 +179,7 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     public void addRtxStatusCallback(RtxStatusCallback rtxStatusCallback) {
-        synchronized (mLock) {
-            mRtxStatusCallbacks.add(rtxStatusCallback);
-        }
+        mRtxStatusCallbacks.add(rtxStatusCallback);
     }
 
     public void addReverseChargingChangeListener(ReverseChargingChangeListener reverseChargingChangeListener) {
@@ -181,21 +187,30 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     private void dispatchRtxStatusCallbacks(RtxStatusInfo rtxStatusInfo) {
-        ArrayList arrayList;
-        synchronized (mLock) {
-            arrayList = new ArrayList(mRtxStatusCallbacks);
-        }
-        Iterator it = arrayList.iterator();
-        while (it.hasNext()) {
-            ((RtxStatusCallback) it.next()).onRtxStatusChanged(rtxStatusInfo);
+        for (RtxStatusCallback callback : mRtxStatusCallbacks) {
+            callback.onRtxStatusChanged(rtxStatusInfo);
         }
     }
 
     @Override
     public void rtxStatusInfoChanged(RtxStatusInfo rtxStatusInfo) throws RemoteException {
+        BatteryStateHub.Snapshot battery = mBatteryStateHub.getSnapshot();
+        mSessionTelemetry.onStatus(SystemClock.elapsedRealtime(), rtxStatusInfo.mode == 1,
+                rtxStatusInfo.acctype, rtxStatusInfo.iout, rtxStatusInfo.vout, rtxStatusInfo.level,
+                rtxStatusInfo.reason, battery != null ? battery.getLevel() : -1);
         dispatchRtxStatusCallbacks(rtxStatusInfo);
     }
 
+    @Override
+    public void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("ReverseWirelessCharger:");
+        pw.println("  halConnected=" + (mWirelessCharger != null) + ", halInits=" + mHalInits
+                + ", halInitFailures=" + mHalInitFailures + ", halRetryDelayMs=" + mHalRetryDelayMs
+                + ", statusCallbacks=" + mRtxStatusCallbacks.size()
+                + ", informationCallbacks=" + mRtxInformationCallbacks.size());
+        mSessionTelemetry.dump(pw);
+    }
+
     public interface IsDockPresentChangeListener extends IsDockPresentCallback {
         void onDockPresentChanged(Bundle bundle);
 
@@ -209,26 +224,26 @@ public class ReverseWirelessCharger extends IWirelessChargerRtxStatusCallback.St
     }
 
     public interface ReverseChargingInformationChangeListener extends RtxInformationCallback {
-        void onReverseInformationChanged(Bundle bundle);
+        void onReverseInformationChanged(RtxStatus status);
 
         @Override
         default void onRtxInformationChanged(RtxStatusInfo rtxStatusInfo) {
             if (DEBUG) {
                 Log.d("ReverseWirelessCharger", "onRtxInformationChanged() RtxStatusInfo : " + rtxStatusInfo.toString());
             }
-            onReverseInformationChanged(buildReverseStatusBundle(rtxStatusInfo));
+            onReverseInformationChanged(new RtxStatus(rtxStatusInfo));
         }
     }
 
     public interface ReverseChargingChangeListener extends RtxStatusCallback {
-        void onReverseStatusChanged(Bundle bundle);
+        void onReverseStatusChanged(RtxStatus status);
 
         @Override
         default void onRtxStatusChanged(RtxStatusInfo rtxStatusInfo) {
             if (DEBUG) {
                 Log.d("ReverseWirelessCharger", "onRtxStatusChanged() RtxStatusInfo : " + rtxStatusInfo.toString());
             }
-            onReverseStatusChanged(buildReverseStatusBundle(rtxStatusInfo));
+            onReverseStatusChanged(new RtxStatus(rtxStatusInfo));
         }
     }
 
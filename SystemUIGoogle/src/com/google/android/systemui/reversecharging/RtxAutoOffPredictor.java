@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.util.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+
+/**
+ * Predicts when a reverse charging session has stopped doing useful work.
+ *
+ * Two signals are tracked from the RTX status reports of a connected receiver:
+ * <ul>
+ * <li>idle: the smoothed output current has stayed under the idle current. Confidence grows
+ *     linearly with the time spent idle, reaching 100% after the idle window.</li>
+ * <li>taper: the receiver reports a high level and the smoothed current has dropped well below
+ *     the session's peak, as happens when a battery approaches full.</li>
+ * </ul>
+ * {@link #onStatus} returns when the session should be turned off, assuming nothing changes,
+ * for the confidence threshold to be met. Nothing is armed until the session has seen at least
+ * {@link #MIN_SAMPLES} reports spanning {@link #MIN_SPAN_MS}, and the taper signal must then hold
+ * for {@link #MIN_SPAN_MS} as well, so a single low reading cannot end a session. A threshold
+ * above 100 disables shutdowns while still logging what would have been predicted. Must be used
+ * from a single thread.
+ */
+class RtxAutoOffPredictor {
+    private static final String TAG = "ReverseChargingControl";
+
+    static final long NO_SHUTDOWN = -1;
+
+    @VisibleForTesting
+    static final int TAPER_START_LEVEL = 90;
+    @VisibleForTesting
+    static final int MIN_SAMPLES = 6;
+    @VisibleForTesting
+    static final long MIN_SPAN_MS = 60000;
+    // Weight of a new sample in the smoothed current, in percent.
+    private static final int SMOOTHING_PCT = 25;
+
+    private final int mConfidenceThresholdPct;
+    private final int mIdleCurrentMa;
+    private final long mIdleWindowMs;
+
+    private boolean mActive;
+    private long mSessionStartMs;
+    private int mSamples;
+    private int mSmoothedMa = -1;
+    private int mPeakSmoothedMa;
+    private long mIdleSinceMs = -1;
+    private long mTaperSinceMs = -1;
+    private long mPredictedEndMs = -1;
+    private int mLastConfidencePct;
+    private boolean mShutdownFired;
+
+    private int mSessions;
+    private int mPredictions;
+    private int mPredictorShutdowns;
+    private int mPredictedSessions;
+    private long mTotalAbsErrorMs;
+
+    RtxAutoOffPredictor(int confidenceThresholdPct, int idleCurrentMa, long idleWindowMs) {
+        mConfidenceThresholdPct = confidenceThresholdPct;
+        mIdleCurrentMa = idleCurrentMa;
+        mIdleWindowMs = Math.max(idleWindowMs, 1);
+    }
+
+    /**
+     * Feeds a status report of a session with a connected receiver and returns the delay after
+     * which it should be turned off, or {@link #NO_SHUTDOWN}.
+     */
+    long onStatus(long nowMs, int ioutMa, int rxLevel) {
+        if (!mActive) {
+            mActive = true;
+            mSessionStartMs = nowMs;
+            mSamples = 0;
+            mSmoothedMa = -1;
+            mPeakSmoothedMa = 0;
+            mIdleSinceMs = -1;
+            mTaperSinceMs = -1;
+            mPredictedEndMs = -1;
+            mShutdownFired = false;
+        }
+        mSamples++;
+        int currentMa = Math.max(ioutMa, 0);
+        mSmoothedMa = mSmoothedMa < 0 ? currentMa
+                : mSmoothedMa + (currentMa - mSmoothedMa) * SMOOTHING_PCT / 100;
+        mPeakSmoothedMa = Math.max(mPeakSmoothedMa, mSmoothedMa);
+
+        long idleDelayMs = NO_SHUTDOWN;
+        int idleConfidence = 0;
+        if (mSmoothedMa < mIdleCurrentMa) {
+            if (mIdleSinceMs < 0) {
+                mIdleSinceMs = nowMs;
+            }
+            long idleMs = nowMs - mIdleSinceMs;
+            idleConfidence = (int) Math.min(100, idleMs * 100 / mIdleWindowMs);
+            if (mConfidenceThresholdPct <= 100) {
+                long thresholdMs = mIdleWindowMs * mConfidenceThresholdPct / 100;
+                idleDelayMs = Math.max(mIdleSinceMs + thresholdMs - nowMs, 0);
+            }
+        } else {
+            mIdleSinceMs = -1;
+        }
+
+        int taperConfidence = 0;
+        if (rxLevel >= TAPER_START_LEVEL && mPeakSmoothedMa > 0) {
+            int levelConfidence = Math.min(100, (rxLevel - TAPER_START_LEVEL) * 100 / (100 - TAPER_START_LEVEL));
+            int dropConfidence = 100 - mSmoothedMa * 100 / mPeakSmoothedMa;
+            taperConfidence = Math.min(levelConfidence, dropConfidence);
+        }
+        mLastConfidencePct = Math.max(idleConfidence, taperConfidence);
+
+        long delayMs = idleDelayMs;
+        if (taperConfidence >= mConfidenceThresholdPct) {
+            if (mTaperSinceMs < 0) {
+                mTaperSinceMs = nowMs;
+            }
+            long taperDelayMs = Math.max(mTaperSinceMs + MIN_SPAN_MS - nowMs, 0);
+            delayMs = delayMs == NO_SHUTDOWN ? taperDelayMs : Math.min(delayMs, taperDelayMs);
+        } else {
+            mTaperSinceMs = -1;
+        }
+        if (mSamples < MIN_SAMPLES || nowMs - mSessionStartMs < MIN_SPAN_MS) {
+            // Too little history to act on; the next report re-evaluates.
+            delayMs = NO_SHUTDOWN;
+        }
+        long predictedEndMs = -1;
+        if (delayMs != NO_SHUTDOWN) {
+            predictedEndMs = nowMs + delayMs;
+        } else if (mIdleSinceMs >= 0) {
+            // Nothing is armed; log when the idle window would have closed.
+            predictedEndMs = mIdleSinceMs + mIdleWindowMs;
+        }
+        if (predictedEndMs >= 0 && mPredictedEndMs < 0) {
+            mPredictions++;
+        }
+        mPredictedEndMs = predictedEndMs;
+        return delayMs;
+    }
+
+    /** Records that the predicted shutdown fired. */
+    void onPredictedShutdown() {
+        mShutdownFired = true;
+        mPredictorShutdowns++;
+    }
+
+    /** Ends the current session and logs the predicted against the actual end. */
+    void onSessionEnd(long nowMs, int reason) {
+        if (!mActive) {
+            return;
+        }
+        mActive = false;
+        mSessions++;
+        long errorMs = 0;
+        if (mPredictedEndMs >= 0) {
+            errorMs = nowMs - mPredictedEndMs;
+            mPredictedSessions++;
+            mTotalAbsErrorMs += Math.abs(errorMs);
+        }
+        Log.i(TAG, "RTX auto-off: durationMs=" + (nowMs - mSessionStartMs)
+                + " predictedEndMs=" + (mPredictedEndMs >= 0 ? mPredictedEndMs - mSessionStartMs : -1)
+                + " actualEndMs=" + (nowMs - mSessionStartMs) + " errorMs=" + errorMs
+                + " confidence=" + mLastConfidencePct + " smoothedMa=" + mSmoothedMa
+                + " peakMa=" + mPeakSmoothedMa + " reason=" + reason + " byPredictor=" + mShutdownFired);
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("  RtxAutoOffPredictor:");
+        pw.println("    thresholdPct=" + mConfidenceThresholdPct + ", idleCurrentMa=" + mIdleCurrentMa
+                + ", idleWindowMs=" + mIdleWindowMs);
+        pw.println("    active=" + mActive + ", samples=" + mSamples + ", confidence="
+                + mLastConfidencePct + ", smoothedMa="
+                + mSmoothedMa + ", peakMa=" + mPeakSmoothedMa);
+        pw.println("    sessions=" + mSessions + ", predictions=" + mPredictions + ", shutdowns="
+                + mPredictorShutdowns + ", meanAbsErrorMs="
+                + (mPredictedSessions > 0 ? mTotalAbsErrorMs / mPredictedSessions : -1));
+    }
+}
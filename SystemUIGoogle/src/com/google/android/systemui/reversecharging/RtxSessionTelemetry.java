@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+
+/**
+ * Accumulates per-session energy and current statistics from RTX status callbacks.
+ *
+ * A session runs from the first status with RTX mode on to the first one with it off. Between
+ * callbacks the last reported output is assumed to hold, so delivered energy is the sum of
+ * vout * iout over each interval. Finished sessions are kept in a small ring for dumpsys.
+ */
+class RtxSessionTelemetry {
+    @VisibleForTesting
+    static final int HISTORY_SIZE = 16;
+
+    static final class Session {
+        long startMs;
+        long durationMs;
+        int accessoryType;
+        // Integrated output in mA * ms and mW * ms; iout is reported in mA and vout in mV.
+        long chargeMaMs;
+        long energyMwMs;
+        int peakCurrentMa;
+        int samples;
+        int startBatteryLevel = -1;
+        int endBatteryLevel = -1;
+        int lastRxLevel = -1;
+        int endReason = -1;
+
+        long averageCurrentMa() {
+            return durationMs > 0 ? chargeMaMs / durationMs : 0;
+        }
+
+        long energyMwh() {
+            return energyMwMs / 3_600_000L;
+        }
+
+        int batteryDrop() {
+            return startBatteryLevel >= 0 && endBatteryLevel >= 0
+                    ? startBatteryLevel - endBatteryLevel : -1;
+        }
+
+        @Override
+        public String toString() {
+            return "start=" + startMs + " durationMs=" + durationMs + " accType=" + accessoryType
+                    + " energyMwh=" + energyMwh() + " avgMa=" + averageCurrentMa()
+                    + " peakMa=" + peakCurrentMa + " samples=" + samples
+                    + " battery=" + startBatteryLevel + "->" + endBatteryLevel
+                    + " drop=" + batteryDrop() + " rxLevel=" + lastRxLevel
+                    + " reason=" + endReason;
+        }
+    }
+
+    @GuardedBy("this")
+    private final Session[] mHistory = new Session[HISTORY_SIZE];
+    @GuardedBy("this")
+    private int mHistoryCount;
+    @GuardedBy("this")
+    private int mHistoryHead;
+    @GuardedBy("this")
+    private Session mCurrent;
+    @GuardedBy("this")
+    private long mLastSampleMs;
+    @GuardedBy("this")
+    private long mLastPowerMw;
+    @GuardedBy("this")
+    private int mLastCurrentMa;
+    @GuardedBy("this")
+    private int mSessions;
+
+    /** Feeds one RTX status callback; {@code batteryLevel} is the phone's level, or -1. */
+    synchronized void onStatus(long nowMs, boolean rtxOn, int accessoryType, int ioutMa,
+            int voutMv, int rxLevel, int reason, int batteryLevel) {
+        if (mCurrent == null) {
+            if (!rtxOn) {
+                return;
+            }
+            mCurrent = new Session();
+            mCurrent.startMs = nowMs;
+            mCurrent.startBatteryLevel = batteryLevel;
+            mLastSampleMs = nowMs;
+            mLastPowerMw = 0;
+            mLastCurrentMa = 0;
+        }
+        Session session = mCurrent;
+        long elapsedMs = Math.max(nowMs - mLastSampleMs, 0);
+        session.chargeMaMs += mLastCurrentMa * elapsedMs;
+        session.energyMwMs += mLastPowerMw * elapsedMs;
+        session.durationMs = nowMs - session.startMs;
+        session.samples++;
+        mLastSampleMs = nowMs;
+        if (accessoryType != 0) {
+            session.accessoryType = accessoryType;
+        }
+        if (rxLevel >= 0) {
+            session.lastRxLevel = rxLevel;
+        }
+        if (!rtxOn) {
+            session.endReason = reason;
+            session.endBatteryLevel = batteryLevel;
+            mCurrent = null;
+            mSessions++;
+            mHistory[mHistoryHead] = session;
+            mHistoryHead = (mHistoryHead + 1) % HISTORY_SIZE;
+            mHistoryCount = Math.min(mHistoryCount + 1, HISTORY_SIZE);
+            return;
+        }
+        int currentMa = Math.max(ioutMa, 0);
+        mLastCurrentMa = currentMa;
+        mLastPowerMw = (long) currentMa * Math.max(voutMv, 0) / 1000;
+        session.peakCurrentMa = Math.max(session.peakCurrentMa, currentMa);
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("  RtxSessionTelemetry: sessions=" + mSessions);
+        if (mCurrent != null) {
+            pw.println("    current: " + mCurrent);
+        }
+        for (int i = 0; i < mHistoryCount; i++) {
+            int index = (mHistoryHead - 1 - i + HISTORY_SIZE) % HISTORY_SIZE;
+            pw.println("    " + mHistory[index]);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.systemui.util.time.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+
+/**
+ * Plays the reverse charging sound from a SoundPool that keeps it decoded.
+ *
+ * The sound is decoded once, off the calling thread, and only decoded again when the configured
+ * path changes. Latency is measured from the play request to the SoundPool starting the stream;
+ * a request made before decoding has finished is played as soon as it completes.
+ */
+class RtxSoundPlayer implements SoundPool.OnLoadCompleteListener {
+    private static final String TAG = "ReverseChargingControl";
+
+    private final Executor mBgExecutor;
+    private final SystemClock mClock;
+
+    @GuardedBy("this")
+    private SoundPool mSoundPool;
+    @GuardedBy("this")
+    private String mLoadedPath;
+    @GuardedBy("this")
+    private int mSoundId;
+    @GuardedBy("this")
+    private boolean mLoaded;
+    @GuardedBy("this")
+    private long mPendingRequestMs = -1;
+
+    @GuardedBy("this")
+    private int mLoads;
+    @GuardedBy("this")
+    private int mWarmPlays;
+    @GuardedBy("this")
+    private int mColdPlays;
+    @GuardedBy("this")
+    private long mLastLatencyMs = -1;
+    @GuardedBy("this")
+    private long mMaxLatencyMs = -1;
+    @GuardedBy("this")
+    private long mTotalLatencyMs;
+
+    RtxSoundPlayer(Executor bgExecutor, SystemClock clock) {
+        mBgExecutor = bgExecutor;
+        mClock = clock;
+    }
+
+    /** Decodes {@code path} ahead of the first play. */
+    void preload(String path) {
+        mBgExecutor.execute(() -> {
+            synchronized (this) {
+                ensureLoadedLocked(path);
+            }
+        });
+    }
+
+    void play(String path) {
+        long requestMs = mClock.elapsedRealtime();
+        mBgExecutor.execute(() -> {
+            synchronized (this) {
+                ensureLoadedLocked(path);
+                if (mSoundId == 0) {
+                    return;
+                }
+                if (mLoaded) {
+                    startLocked(requestMs, true);
+                } else {
+                    mPendingRequestMs = requestMs;
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+        if (soundPool != mSoundPool || sampleId != mSoundId) {
+            return;
+        }
+        if (status != 0) {
+            Log.w(TAG, "Could not decode RTX sound " + mLoadedPath + ", status=" + status);
+            mPendingRequestMs = -1;
+            return;
+        }
+        mLoaded = true;
+        if (mPendingRequestMs >= 0) {
+            startLocked(mPendingRequestMs, false);
+            mPendingRequestMs = -1;
+        }
+    }
+
+    @GuardedBy("this")
+    private void ensureLoadedLocked(String path) {
+        if (path.equals(mLoadedPath)) {
+            return;
+        }
+        if (mSoundPool == null) {
+            mSoundPool = new SoundPool.Builder()
+                    .setMaxStreams(1)
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setLegacyStreamType(AudioManager.STREAM_SYSTEM)
+                            .build())
+                    .build();
+            mSoundPool.setOnLoadCompleteListener(this);
+        } else if (mSoundId != 0) {
+            mSoundPool.unload(mSoundId);
+        }
+        mLoadedPath = path;
+        mLoaded = false;
+        mPendingRequestMs = -1;
+        mSoundId = mSoundPool.load(path, 1);
+        mLoads++;
+        if (mSoundId == 0) {
+            Log.w(TAG, "Could not load RTX sound " + path);
+        }
+    }
+
+    @GuardedBy("this")
+    private void startLocked(long requestMs, boolean warm) {
+        if (mSoundPool.play(mSoundId, 1f, 1f, 0, 0, 1f) == 0) {
+            Log.w(TAG, "Could not play RTX sound " + mLoadedPath);
+            return;
+        }
+        long latencyMs = mClock.elapsedRealtime() - requestMs;
+        if (warm) {
+            mWarmPlays++;
+        } else {
+            mColdPlays++;
+        }
+        mLastLatencyMs = latencyMs;
+        mMaxLatencyMs = Math.max(mMaxLatencyMs, latencyMs);
+        mTotalLatencyMs += latencyMs;
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        int plays = mWarmPlays + mColdPlays;
+        pw.println("  RtxSoundPlayer:");
+        pw.println("    path=" + mLoadedPath + ", loaded=" + mLoaded + ", loads=" + mLoads
+                + ", warmPlays=" + mWarmPlays + ", coldPlays=" + mColdPlays);
+        pw.println("    latencyMs: last=" + mLastLatencyMs + ", max=" + mMaxLatencyMs
+                + ", avg=" + (plays > 0 ? mTotalLatencyMs / plays : -1));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import vendor.google.wireless_charger.V1_2.RtxStatusInfo;
+
+/**
+ * Immutable copy of one RTX status report from the wireless charger HAL.
+ *
+ * Listeners may hand it to another thread; the HAL's own RtxStatusInfo is not kept.
+ */
+public final class RtxStatus {
+    public static final int MODE_OFF = 0;
+    public static final int MODE_ON = 1;
+
+    private final int mMode;
+    private final int mAccessoryType;
+    private final boolean mConnected;
+    private final int mIout;
+    private final int mVout;
+    private final int mLevel;
+    private final int mReason;
+
+    RtxStatus(RtxStatusInfo rtxStatusInfo) {
+        mMode = rtxStatusInfo.mode;
+        mAccessoryType = rtxStatusInfo.acctype;
+        mConnected = rtxStatusInfo.chg_s;
+        mIout = rtxStatusInfo.iout;
+        mVout = rtxStatusInfo.vout;
+        mLevel = rtxStatusInfo.level;
+        mReason = rtxStatusInfo.reason;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public boolean isRtxOn() {
+        return mMode == MODE_ON;
+    }
+
+    public int getAccessoryType() {
+        return mAccessoryType;
+    }
+
+    /** Whether a receiver is connected and being charged. */
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    /** Output current in mA. */
+    public int getIout() {
+        return mIout;
+    }
+
+    /** Output voltage in mV. */
+    public int getVout() {
+        return mVout;
+    }
+
+    /** Battery level of the receiver, or a value <= 0 if unknown. */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    public int getReason() {
+        return mReason;
+    }
+
+    @Override
+    public String toString() {
+        return "RtxStatus{mode=" + mMode + ", accType=" + mAccessoryType + ", connected=" + mConnected
+                + ", iout=" + mIout + ", vout=" + mVout + ", level=" + mLevel
+                + ", reason=" + mReason + "}";
+    }
+}
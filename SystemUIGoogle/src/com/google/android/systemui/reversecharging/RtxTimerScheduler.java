@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.app.AlarmManager;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.systemui.util.time.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * Holds every reverse charging timer and backs them with a single AlarmManager alarm.
+ *
+ * Each timer type has at most one deadline; setting it again replaces the old one, like
+ * re-arming an OnAlarmListener does. Only the earliest pending deadline is programmed, and the
+ * alarm is left alone while that deadline does not move. Time comes from the injected
+ * {@link SystemClock}, so tests can drive expiry with a fake clock and {@link #onAlarm()}.
+ */
+class RtxTimerScheduler {
+    private static final String TAG = "ReverseChargingControl";
+
+    static final int TIMER_RTX_FINISH = 0;
+    static final int TIMER_RTX_FINISH_RX_FULL = 1;
+    static final int TIMER_CHECK_NFC_USB_AUDIO = 2;
+    static final int TIMER_RECONNECTED_TIMEOUT = 3;
+    static final int TIMER_ACCESSORY_REMOVED_TIMEOUT = 4;
+    static final int TIMER_PREDICTED_END = 5;
+    @VisibleForTesting
+    static final int TIMER_COUNT = 6;
+
+    private static final long NONE = Long.MAX_VALUE;
+
+    interface Callback {
+        /** Called on the alarm thread for each expired timer, earliest deadline first. */
+        void onTimerExpired(int type);
+    }
+
+    private final AlarmManager mAlarmManager;
+    private final SystemClock mClock;
+    private final Callback mCallback;
+    private final AlarmManager.OnAlarmListener mAlarmListener = this::onAlarm;
+
+    @GuardedBy("this")
+    private final long[] mDeadlines = new long[TIMER_COUNT];
+    @GuardedBy("this")
+    private long mProgrammedDeadline = NONE;
+
+    @GuardedBy("this")
+    private long mAlarmsProgrammed;
+    @GuardedBy("this")
+    private long mAlarmsSkipped;
+    @GuardedBy("this")
+    private long mAlarmsFired;
+
+    RtxTimerScheduler(AlarmManager alarmManager, SystemClock clock, Callback callback) {
+        mAlarmManager = alarmManager;
+        mClock = clock;
+        mCallback = callback;
+        for (int i = 0; i < TIMER_COUNT; i++) {
+            mDeadlines[i] = NONE;
+        }
+    }
+
+    /** Arms timer {@code type} to expire {@code delayMs} from now, replacing any earlier arming. */
+    synchronized void set(int type, long delayMs) {
+        mDeadlines[type] = mClock.elapsedRealtime() + Math.max(delayMs, 0);
+        reprogramLocked();
+    }
+
+    synchronized void cancel(int type) {
+        if (mDeadlines[type] == NONE) {
+            return;
+        }
+        mDeadlines[type] = NONE;
+        reprogramLocked();
+    }
+
+    synchronized boolean isPending(int type) {
+        return mDeadlines[type] != NONE;
+    }
+
+    @VisibleForTesting
+    void onAlarm() {
+        int expired = 0;
+        long[] deadlines = new long[TIMER_COUNT];
+        synchronized (this) {
+            mAlarmsFired++;
+            mProgrammedDeadline = NONE;
+            long now = mClock.elapsedRealtime();
+            for (int i = 0; i < TIMER_COUNT; i++) {
+                deadlines[i] = mDeadlines[i];
+                if (mDeadlines[i] <= now) {
+                    expired |= 1 << i;
+                    mDeadlines[i] = NONE;
+                }
+            }
+            reprogramLocked();
+        }
+        // Callbacks may arm or cancel timers, so they run without the lock held.
+        while (expired != 0) {
+            int next = -1;
+            for (int i = 0; i < TIMER_COUNT; i++) {
+                if ((expired & (1 << i)) != 0 && (next < 0 || deadlines[i] < deadlines[next])) {
+                    next = i;
+                }
+            }
+            expired &= ~(1 << next);
+            mCallback.onTimerExpired(next);
+        }
+    }
+
+    @GuardedBy("this")
+    private void reprogramLocked() {
+        long earliest = NONE;
+        for (long deadline : mDeadlines) {
+            earliest = Math.min(earliest, deadline);
+        }
+        if (earliest == mProgrammedDeadline) {
+            mAlarmsSkipped++;
+            return;
+        }
+        mProgrammedDeadline = earliest;
+        if (earliest == NONE) {
+            mAlarmManager.cancel(mAlarmListener);
+            return;
+        }
+        mAlarmsProgrammed++;
+        mAlarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, earliest, TAG,
+                mAlarmListener, null);
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        long now = mClock.elapsedRealtime();
+        StringBuilder pending = new StringBuilder();
+        for (int i = 0; i < TIMER_COUNT; i++) {
+            if (mDeadlines[i] != NONE) {
+                pending.append(' ').append(i).append('=').append(mDeadlines[i] - now).append("ms");
+            }
+        }
+        pw.println("  RtxTimerScheduler:");
+        pw.println("    pending:" + (pending.length() > 0 ? pending : " none"));
+        pw.println("    alarmsProgrammed=" + mAlarmsProgrammed + ", alarmsSkipped=" + mAlarmsSkipped
+                + ", alarmsFired=" + mAlarmsFired);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.content.Context;
+import android.os.IThermalEventListener;
+import android.os.IThermalService;
+import android.os.RemoteException;
+import android.os.Temperature;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.systemui.Dumpable;
+import com.android.systemui.dagger.SysUISingleton;
+import com.android.systemui.dagger.qualifiers.Background;
+import com.android.systemui.dump.DumpManager;
+import com.android.systemui.res.R;
+import com.android.systemui.util.concurrency.DelayableExecutor;
+import com.android.systemui.util.time.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+
+import javax.inject.Inject;
+
+/**
+ * Shared skin temperature subscription for reverse charging.
+ *
+ * One IThermalEventListener is registered while anyone is listening, and the hottest skin sensor
+ * status is folded into a single overheat flag with hysteresis: overheat starts as soon as the
+ * status reaches the enter threshold, but only ends once it has dropped below the exit threshold
+ * and the overheat state has lasted at least the minimum dwell time.
+ */
+@SysUISingleton
+public class SkinThermalMonitor implements Dumpable {
+    private static final String TAG = "SkinThermalMonitor";
+    private static final boolean DEBUG = Log.isLoggable(TAG, 3);
+
+    public interface Listener {
+        void onOverheatChanged(boolean overheat);
+    }
+
+    private final IThermalService mThermalService;
+    private final DelayableExecutor mBgExecutor;
+    private final SystemClock mClock;
+    private final int mEnterStatus;
+    private final int mExitStatus;
+    private final long mMinDwellMs;
+    private final IThermalEventListener mEventListener = new IThermalEventListener.Stub() {
+        @Override
+        public void notifyThrottling(Temperature temperature) {
+            String name = temperature.getName();
+            int status = temperature.getStatus();
+            mBgExecutor.execute(() -> onStatusChanged(name, status));
+        }
+    };
+
+    @GuardedBy("this")
+    private final ArrayMap<Listener, Executor> mListeners = new ArrayMap<>();
+    @GuardedBy("this")
+    private final ArrayMap<String, Integer> mStatuses = new ArrayMap<>();
+    @GuardedBy("this")
+    private boolean mRegistered;
+    @GuardedBy("this")
+    private boolean mOverheat;
+    @GuardedBy("this")
+    private long mOverheatSinceMs;
+    @GuardedBy("this")
+    private Runnable mCancelPendingExit;
+
+    @GuardedBy("this")
+    private long mEvents;
+    @GuardedBy("this")
+    private int mEnters;
+    @GuardedBy("this")
+    private int mExits;
+    @GuardedBy("this")
+    private int mDeferredExits;
+
+    @Inject
+    public SkinThermalMonitor(Context context, IThermalService thermalService,
+            @Background DelayableExecutor bgExecutor, SystemClock clock, DumpManager dumpManager) {
+        mThermalService = thermalService;
+        mBgExecutor = bgExecutor;
+        mClock = clock;
+        mEnterStatus = context.getResources().getInteger(R.integer.config_rtx_thermal_enter_status);
+        mExitStatus = Math.min(mEnterStatus,
+                context.getResources().getInteger(R.integer.config_rtx_thermal_exit_status));
+        mMinDwellMs = context.getResources().getInteger(R.integer.config_rtx_thermal_min_dwell_ms);
+        dumpManager.registerDumpable(SkinThermalMonitor.class.getName(), this);
+    }
+
+    /**
+     * Adds {@code listener} and delivers the current overheat state to it; the first listener
+     * starts the thermal subscription.
+     */
+    public void addListener(Executor executor, Listener listener) {
+        boolean changed;
+        boolean overheat;
+        synchronized (this) {
+            mListeners.put(listener, executor);
+            changed = registerLocked();
+            overheat = mOverheat;
+        }
+        if (changed) {
+            notifyListeners();
+        } else {
+            executor.execute(() -> listener.onOverheatChanged(overheat));
+        }
+    }
+
+    /** Starts the thermal subscription if needed and returns whether mOverheat changed. */
+    @GuardedBy("this")
+    private boolean registerLocked() {
+        if (mRegistered) {
+            return false;
+        }
+        try {
+            mThermalService.registerThermalEventListenerWithType(mEventListener, Temperature.TYPE_SKIN);
+            mRegistered = true;
+            for (Temperature temperature : mThermalService.getCurrentTemperaturesWithType(Temperature.TYPE_SKIN)) {
+                mStatuses.put(temperature.getName(), temperature.getStatus());
+            }
+        } catch (RemoteException e) {
+            Log.e(TAG, "Could not register thermal event listener, exception: " + e);
+        }
+        return evaluateLocked();
+    }
+
+    /** Removes {@code listener}; the last listener stops the thermal subscription. */
+    public synchronized void removeListener(Listener listener) {
+        if (mListeners.remove(listener) == null || !mListeners.isEmpty() || !mRegistered) {
+            return;
+        }
+        try {
+            mThermalService.unregisterThermalEventListener(mEventListener);
+        } catch (RemoteException e) {
+            Log.e(TAG, "Could not unregister thermal event listener, exception: " + e);
+        }
+        mRegistered = false;
+        mStatuses.clear();
+        cancelPendingExitLocked();
+    }
+
+    public synchronized boolean isOverheat() {
+        return mOverheat;
+    }
+
+    private void onStatusChanged(String name, int status) {
+        synchronized (this) {
+            if (!mRegistered) {
+                return;
+            }
+            mEvents++;
+            mStatuses.put(name, status);
+            if (DEBUG) {
+                Log.d(TAG, "onStatusChanged(): " + name + " status=" + status);
+            }
+            if (!evaluateLocked()) {
+                return;
+            }
+        }
+        notifyListeners();
+    }
+
+    private void onDwellElapsed() {
+        synchronized (this) {
+            mCancelPendingExit = null;
+            if (!mRegistered || !evaluateLocked()) {
+                return;
+            }
+        }
+        notifyListeners();
+    }
+
+    /** Applies the hysteresis to the current statuses and returns whether mOverheat changed. */
+    @GuardedBy("this")
+    private boolean evaluateLocked() {
+        int maxStatus = Temperature.THROTTLING_NONE;
+        for (int i = 0; i < mStatuses.size(); i++) {
+            maxStatus = Math.max(maxStatus, mStatuses.valueAt(i));
+        }
+        if (!mOverheat) {
+            if (maxStatus < mEnterStatus) {
+                return false;
+            }
+            mOverheat = true;
+            mOverheatSinceMs = mClock.elapsedRealtime();
+            mEnters++;
+            Log.i(TAG, "overheat entered, status=" + maxStatus);
+            return true;
+        }
+        if (maxStatus >= mExitStatus) {
+            cancelPendingExitLocked();
+            return false;
+        }
+        long remainingMs = mOverheatSinceMs + mMinDwellMs - mClock.elapsedRealtime();
+        if (remainingMs > 0) {
+            if (mCancelPendingExit == null) {
+                mDeferredExits++;
+                mCancelPendingExit = mBgExecutor.executeDelayed(this::onDwellElapsed, remainingMs);
+            }
+            return false;
+        }
+        cancelPendingExitLocked();
+        mOverheat = false;
+        mExits++;
+        Log.i(TAG, "overheat exited, status=" + maxStatus);
+        return true;
+    }
+
+    @GuardedBy("this")
+    private void cancelPendingExitLocked() {
+        if (mCancelPendingExit != null) {
+            mCancelPendingExit.run();
+            mCancelPendingExit = null;
+        }
+    }
+
+    private void notifyListeners() {
+        boolean overheat;
+        ArrayMap<Listener, Executor> listeners;
+        synchronized (this) {
+            overheat = mOverheat;
+            listeners = new ArrayMap<>(mListeners);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            Listener listener = listeners.keyAt(i);
+            listeners.valueAt(i).execute(() -> listener.onOverheatChanged(overheat));
+        }
+    }
+
+    @Override
+    public synchronized void dump(@NonNull PrintWriter pw, @NonNull String[] args) {
+        pw.println("SkinThermalMonitor:");
+        pw.println("  registered=" + mRegistered + ", listeners=" + mListeners.size()
+                + ", overheat=" + mOverheat + ", statuses=" + mStatuses);
+        pw.println("  enterStatus=" + mEnterStatus + ", exitStatus=" + mExitStatus
+                + ", minDwellMs=" + mMinDwellMs);
+        pw.println("  events=" + mEvents + ", enters=" + mEnters + ", exits=" + mExits
+                + ", deferredExits=" + mDeferredExits);
+    }
+}
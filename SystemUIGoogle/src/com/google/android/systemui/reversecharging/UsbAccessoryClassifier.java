@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.reversecharging;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.util.SparseLongArray;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+
+/**
+ * Classifies attached USB devices for the reverse charging and NFC conflict checks.
+ *
+ * The configured NFC-conflicting vendor/product pairs are packed into a single open-addressed
+ * int set, and the result of walking a device's interfaces and configurations is memoized by
+ * device id, so repeated attach/detach of the same accessory does not rescan anything.
+ */
+class UsbAccessoryClassifier {
+    /** The device is on the NFC conflict list. */
+    static final int FLAG_NFC_CONFLICT = 1 << 0;
+    /** The device has an audio interface and a configuration drawing less than 100 mA. */
+    static final int FLAG_LOW_POWER_AUDIO = 1 << 1;
+
+    @VisibleForTesting
+    static final int MAX_CACHED_DEVICES = 32;
+
+    private static final int EMPTY = 0;
+
+    private final int[] mConflictSet;
+    private final int mConflictCount;
+    // 0/0 collides with the EMPTY slot marker, so it is tracked on its own.
+    private boolean mContainsEmpty;
+
+    // Device id -> packed vendor/product id in the high word, classification flags in the low word.
+    @GuardedBy("this")
+    private final SparseLongArray mCache = new SparseLongArray();
+    @GuardedBy("this")
+    private long mHits;
+    @GuardedBy("this")
+    private long mMisses;
+
+    UsbAccessoryClassifier(int[] vendorIds, int[] productIds) {
+        if (vendorIds.length != productIds.length) {
+            throw new IllegalStateException("VendorIds and ProductIds must be the same length");
+        }
+        // Power of two at least twice the entry count keeps probe chains short.
+        int capacity = Integer.highestOneBit(Math.max(vendorIds.length, 1) * 4 - 1);
+        mConflictSet = new int[capacity];
+        int count = 0;
+        for (int i = 0; i < vendorIds.length; i++) {
+            if ((vendorIds[i] & ~0xffff) != 0 || (productIds[i] & ~0xffff) != 0) {
+                // No UsbDevice can report an id outside 16 bits, so the entry can never match.
+                continue;
+            }
+            if (insert(pack(vendorIds[i], productIds[i]))) {
+                count++;
+            }
+        }
+        mConflictCount = count;
+    }
+
+    /** Returns the FLAG_* classification of {@code device}. */
+    synchronized int classify(UsbDevice device) {
+        int deviceId = device.getDeviceId();
+        int packed = pack(device.getVendorId(), device.getProductId());
+        long cached = mCache.get(deviceId, -1);
+        if (cached != -1 && (int) (cached >>> 32) == packed) {
+            mHits++;
+            return (int) cached;
+        }
+        mMisses++;
+        int flags = (contains(packed) ? FLAG_NFC_CONFLICT : 0) | scan(device);
+        if (cached == -1 && mCache.size() >= MAX_CACHED_DEVICES) {
+            mCache.clear();
+        }
+        mCache.put(deviceId, ((long) packed << 32) | (flags & 0xffffffffL));
+        return flags;
+    }
+
+    /** Whether the vendor/product pair of {@code device} is on the NFC conflict list. */
+    boolean conflictsWithNfc(UsbDevice device) {
+        return contains(pack(device.getVendorId(), device.getProductId()));
+    }
+
+    private static int scan(UsbDevice device) {
+        boolean audio = false;
+        for (int i = 0; i < device.getInterfaceCount(); i++) {
+            if (device.getInterface(i).getInterfaceClass() == UsbConstants.USB_CLASS_AUDIO) {
+                audio = true;
+                break;
+            }
+        }
+        if (!audio) {
+            return 0;
+        }
+        for (int i = 0; i < device.getConfigurationCount(); i++) {
+            if (device.getConfiguration(i).getMaxPower() < 100) {
+                return FLAG_LOW_POWER_AUDIO;
+            }
+        }
+        return 0;
+    }
+
+    // Vendor and product ids are both 16 bit.
+    @VisibleForTesting
+    static int pack(int vendorId, int productId) {
+        return vendorId << 16 | (productId & 0xffff);
+    }
+
+    private boolean insert(int key) {
+        if (key == EMPTY) {
+            boolean added = !mContainsEmpty;
+            mContainsEmpty = true;
+            return added;
+        }
+        int mask = mConflictSet.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (mConflictSet[i] == key) {
+                return false;
+            }
+            if (mConflictSet[i] == EMPTY) {
+                mConflictSet[i] = key;
+                return true;
+            }
+        }
+    }
+
+    private boolean contains(int key) {
+        if (key == EMPTY) {
+            return mContainsEmpty;
+        }
+        int mask = mConflictSet.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int slot = mConflictSet[i];
+            if (slot == key) {
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("  UsbAccessoryClassifier:");
+        pw.println("    nfcConflictIds=" + mConflictCount + ", cachedDevices=" + mCache.size()
+                + ", hits=" + mHits + ", misses=" + mMisses);
+    }
+}
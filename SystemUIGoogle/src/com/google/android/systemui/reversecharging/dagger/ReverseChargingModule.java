@@ -25,9 +25,11 @@ import com.android.systemui.res.R;
 import com.android.systemui.broadcast.BroadcastDispatcher;
 import com.android.systemui.dagger.SysUISingleton;
 import com.android.systemui.dagger.qualifiers.Main;
+import com.android.systemui.dump.DumpManager;
 import com.android.systemui.statusbar.phone.CentralSurfaces;
 import com.android.systemui.statusbar.phone.StatusBarIconController;
 import com.android.systemui.statusbar.policy.BatteryController;
+import com.google.android.systemui.power.BatteryStateHub;
 import com.google.android.systemui.reversecharging.ReverseChargingViewController;
 import com.google.android.systemui.reversecharging.ReverseWirelessCharger;
 import com.google.android.systemui.statusbar.KeyguardIndicationControllerGoogle;
@@ -43,8 +45,8 @@ import dagger.Provides;
 public abstract class ReverseChargingModule {
     @Provides
     @SysUISingleton
-    static Optional<ReverseWirelessCharger> provideReverseWirelessCharger(Context context) {
-        return context.getResources().getBoolean(R.bool.config_wlc_support_enabled) ? Optional.of(new ReverseWirelessCharger(context)) : Optional.empty();
+    static Optional<ReverseWirelessCharger> provideReverseWirelessCharger(Context context, BatteryStateHub batteryStateHub, DumpManager dumpManager) {
+        return context.getResources().getBoolean(R.bool.config_wlc_support_enabled) ? Optional.of(new ReverseWirelessCharger(context, batteryStateHub, dumpManager)) : Optional.empty();
     }
 
     @Provides
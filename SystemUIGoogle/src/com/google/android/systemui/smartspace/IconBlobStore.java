@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.smartspace;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.systemui.res.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Collection;
+
+/**
+ * Keeps smartspace card icons as content-addressed blobs, so that a card only stores the hash
+ * of its icon.
+ *
+ * An icon is identified by a hash of its dimensions, config and pixels. It is encoded as
+ * lossless WebP and written once; storing the same icon again costs the hash only. Recently
+ * used icons are also kept decoded in memory, so a card built from an icon that was just stored
+ * does not decode it again. Blobs no longer referenced by any stored card are removed by
+ * {@link #gc}.
+ *
+ * {@link #put} and {@link #gc} must be called on the same thread; {@link #get} may be called
+ * from any thread.
+ */
+public class IconBlobStore {
+    private static final String TAG = "IconBlobStore";
+    private static final String DIR_NAME = "smartspace-icons";
+    private static final String SUFFIX = ".webp";
+    private static final int MEMORY_CACHE_SIZE = 8;
+
+    private final File mDir;
+    private final int mMaxIconHeight;
+    private final LruCache<String, Bitmap> mMemoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+
+    // Size of each blob known to be on disk.
+    @GuardedBy("this")
+    private final ArrayMap<String, Long> mBlobSizes = new ArrayMap<>();
+
+    @GuardedBy("this")
+    private int mEncodes;
+    @GuardedBy("this")
+    private long mEncodeMicros;
+    @GuardedBy("this")
+    private long mLastEncodeMicros = -1;
+    @GuardedBy("this")
+    private long mBytesWritten;
+    @GuardedBy("this")
+    private int mReuses;
+    @GuardedBy("this")
+    private long mBytesSaved;
+    @GuardedBy("this")
+    private int mMemoryHits;
+    @GuardedBy("this")
+    private int mDiskLoads;
+    @GuardedBy("this")
+    private int mCollected;
+    @GuardedBy("this")
+    private int mFailures;
+
+    public IconBlobStore(Context context) {
+        this.mDir = new File(context.getApplicationContext().getFilesDir(), DIR_NAME);
+        this.mMaxIconHeight = context.getResources().getDimensionPixelSize(R.dimen.header_icon_size);
+    }
+
+    /**
+     * Returns the hash of {@code bitmap}, writing it to disk first when {@code persist} is set
+     * and it is not stored yet. Returns null if the bitmap could not be hashed or written.
+     */
+    public String put(Bitmap bitmap, boolean persist) {
+        String hash = hash(bitmap);
+        if (hash == null) {
+            return null;
+        }
+        this.mMemoryCache.put(hash, bitmap);
+        if (!persist) {
+            return hash;
+        }
+        long knownSize = blobSize(hash);
+        if (knownSize >= 0) {
+            synchronized (this) {
+                this.mReuses++;
+                this.mBytesSaved += knownSize;
+            }
+            return hash;
+        }
+        return write(hash, bitmap) ? hash : null;
+    }
+
+    /** Returns the icon stored under {@code hash}, or null if there is none. */
+    public Bitmap get(String hash) {
+        Bitmap bitmap = this.mMemoryCache.get(hash);
+        if (bitmap != null) {
+            synchronized (this) {
+                this.mMemoryHits++;
+            }
+            return bitmap;
+        }
+        File file = blobFile(hash);
+        if (!file.exists()) {
+            return null;
+        }
+        bitmap = IconDecoder.decodeFile(file.getPath(), this.mMaxIconHeight);
+        if (bitmap == null) {
+            Log.w(TAG, "unable to decode " + hash);
+            return null;
+        }
+        this.mMemoryCache.put(hash, bitmap);
+        synchronized (this) {
+            this.mDiskLoads++;
+        }
+        return bitmap;
+    }
+
+    /** Deletes every blob whose hash is not in {@code live}. */
+    public void gc(Collection<String> live) {
+        File[] files = this.mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            String hash = name.endsWith(SUFFIX)
+                    ? name.substring(0, name.length() - SUFFIX.length()) : null;
+            if (hash != null && live.contains(hash)) {
+                continue;
+            }
+            // Also sweeps what an interrupted AtomicFile write left behind.
+            if (!file.delete()) {
+                Log.w(TAG, "unable to delete " + name);
+                continue;
+            }
+            synchronized (this) {
+                if (hash != null) {
+                    this.mBlobSizes.remove(hash);
+                }
+                this.mCollected++;
+            }
+            if (hash != null) {
+                this.mMemoryCache.remove(hash);
+            }
+        }
+    }
+
+    private long blobSize(String hash) {
+        synchronized (this) {
+            Long size = this.mBlobSizes.get(hash);
+            if (size != null) {
+                return size;
+            }
+        }
+        File file = blobFile(hash);
+        if (!file.exists()) {
+            return -1;
+        }
+        long size = file.length();
+        synchronized (this) {
+            this.mBlobSizes.put(hash, size);
+        }
+        return size;
+    }
+
+    private boolean write(String hash, Bitmap bitmap) {
+        if (!this.mDir.isDirectory() && !this.mDir.mkdirs()) {
+            Log.e(TAG, "unable to create " + this.mDir);
+            synchronized (this) {
+                this.mFailures++;
+            }
+            return false;
+        }
+        AtomicFile atomicFile = new AtomicFile(blobFile(hash));
+        FileOutputStream fileOutputStream = null;
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        try {
+            fileOutputStream = atomicFile.startWrite();
+            // For lossless WebP, quality trades encode time for size; icons are small.
+            if (!bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, 100, fileOutputStream)) {
+                throw new IllegalStateException("compress failed");
+            }
+            atomicFile.finishWrite(fileOutputStream);
+        } catch (Exception ex) {
+            Log.e(TAG, "unable to write " + hash, ex);
+            atomicFile.failWrite(fileOutputStream);
+            synchronized (this) {
+                this.mFailures++;
+            }
+            return false;
+        }
+        long encodeMicros = (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+        long size = atomicFile.getBaseFile().length();
+        synchronized (this) {
+            this.mBlobSizes.put(hash, size);
+            this.mEncodes++;
+            this.mEncodeMicros += encodeMicros;
+            this.mLastEncodeMicros = encodeMicros;
+            this.mBytesWritten += size;
+        }
+        return true;
+    }
+
+    private File blobFile(String hash) {
+        return new File(this.mDir, hash + SUFFIX);
+    }
+
+    private static String hash(Bitmap bitmap) {
+        try {
+            if (bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+                bitmap = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            }
+            ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+            bitmap.copyPixelsToBuffer(pixels);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(ByteBuffer.allocate(8)
+                    .putInt(bitmap.getWidth()).putInt(bitmap.getHeight()).array());
+            digest.update(bitmap.getConfig().name().getBytes());
+            digest.update(pixels.array(), 0, pixels.position());
+            byte[] bytes = digest.digest();
+            // 128 bits are plenty to tell icons apart and keep file names short.
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(bytes[i] & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (Exception ex) {
+            Log.e(TAG, "unable to hash icon", ex);
+            return null;
+        }
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("IconBlobStore:");
+        pw.println("  blobs=" + this.mBlobSizes.size() + ", cached=" + this.mMemoryCache.size()
+                + ", collected=" + this.mCollected + ", failures=" + this.mFailures);
+        pw.println("  encodes=" + this.mEncodes + ", lastEncodeUs=" + this.mLastEncodeMicros
+                + ", avgEncodeUs=" + (this.mEncodes > 0 ? this.mEncodeMicros / this.mEncodes : -1)
+                + ", bytesWritten=" + this.mBytesWritten);
+        pw.println("  reuses=" + this.mReuses + ", bytesSaved=" + this.mBytesSaved
+                + ", memoryHits=" + this.mMemoryHits + ", diskLoads=" + this.mDiskLoads);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 The PixelExperience Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.systemui.smartspace;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.net.Uri;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Decodes smartspace icons no taller than the height they are shown at.
+ *
+ * Encoded icons are measured first and decoded with the largest power-of-two sample size that
+ * keeps them at least as tall as the target, so the full-size image is never allocated; the
+ * sampled bitmap, at most twice the target in each dimension, is then scaled to the exact
+ * height. Sampled bitmaps land in a scratch bitmap that is reused across decodes, as only the
+ * scaled copy is handed out. Content URIs go through {@link ImageDecoder} with a target size.
+ */
+final class IconDecoder {
+    private static final String TAG = "IconDecoder";
+
+    private interface Source {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    @GuardedBy("IconDecoder.class")
+    private static Bitmap sScratch;
+
+    @GuardedBy("IconDecoder.class")
+    private static int sDecodes;
+    @GuardedBy("IconDecoder.class")
+    private static int sScratchReuses;
+    // Bytes full-size decodes would have allocated, against what was actually allocated.
+    @GuardedBy("IconDecoder.class")
+    private static long sFullBytes;
+    @GuardedBy("IconDecoder.class")
+    private static long sDecodedBytes;
+
+    private IconDecoder() {
+    }
+
+    static Bitmap decodeByteArray(byte[] data, int offset, int length, int maxHeight) {
+        return decode(options -> BitmapFactory.decodeByteArray(data, offset, length, options),
+                maxHeight);
+    }
+
+    static Bitmap decodeFile(String path, int maxHeight) {
+        return decode(options -> BitmapFactory.decodeFile(path, options), maxHeight);
+    }
+
+    static Bitmap decodeUri(ContentResolver contentResolver, Uri uri, int maxHeight)
+            throws IOException {
+        int[] fullSize = new int[2];
+        Bitmap bitmap = ImageDecoder.decodeBitmap(ImageDecoder.createSource(contentResolver, uri),
+                (decoder, info, source) -> {
+                    int width = info.getSize().getWidth();
+                    int height = info.getSize().getHeight();
+                    fullSize[0] = width;
+                    fullSize[1] = height;
+                    // Icons are hashed and processed in software.
+                    decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                    if (height > maxHeight) {
+                        decoder.setTargetSize(scaledWidth(width, height, maxHeight), maxHeight);
+                    }
+                });
+        record((long) fullSize[0] * fullSize[1] * 4, bitmap.getByteCount(), false);
+        return bitmap;
+    }
+
+    /** Returns {@code bitmap} scaled down to {@code maxHeight}, keeping its aspect ratio. */
+    static Bitmap scaleToHeight(Bitmap bitmap, int maxHeight) {
+        if (bitmap == null || bitmap.getHeight() <= maxHeight) {
+            return bitmap;
+        }
+        return Bitmap.createScaledBitmap(bitmap,
+                scaledWidth(bitmap.getWidth(), bitmap.getHeight(), maxHeight), maxHeight, true);
+    }
+
+    private static Bitmap decode(Source source, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        if (height <= maxHeight) {
+            Bitmap bitmap = source.decode(options);
+            if (bitmap != null) {
+                record(bitmap.getByteCount(), bitmap.getByteCount(), false);
+            }
+            return bitmap;
+        }
+        int sampleSize = 1;
+        while (height / (sampleSize * 2) >= maxHeight) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        synchronized (IconDecoder.class) {
+            boolean reused = false;
+            Bitmap sampled = null;
+            if (sScratch != null) {
+                options.inBitmap = sScratch;
+                try {
+                    sampled = source.decode(options);
+                    reused = sampled != null;
+                } catch (IllegalArgumentException e) {
+                    // The scratch bitmap is too small for this icon; decode into a new one.
+                }
+                options.inBitmap = null;
+            }
+            if (sampled == null) {
+                sampled = source.decode(options);
+            }
+            if (sampled == null) {
+                Log.w(TAG, "unable to decode " + width + "x" + height + " icon");
+                return null;
+            }
+            sScratch = sampled;
+            Bitmap bitmap = Bitmap.createScaledBitmap(sampled,
+                    scaledWidth(sampled.getWidth(), sampled.getHeight(), maxHeight), maxHeight, true);
+            if (bitmap == sampled) {
+                bitmap = sampled.copy(sampled.getConfig(), false);
+            }
+            record((long) width * height * 4, sampled.getByteCount() + bitmap.getByteCount(), reused);
+            return bitmap;
+        }
+    }
+
+    private static int scaledWidth(int width, int height, int targetHeight) {
+        return Math.max(1, Math.round((float) width * targetHeight / height));
+    }
+
+    private static synchronized void record(long fullBytes, long decodedBytes, boolean reused) {
+        sDecodes++;
+        sFullBytes += fullBytes;
+        sDecodedBytes += decodedBytes;
+        if (reused) {
+            sScratchReuses++;
+        }
+    }
+
+    static synchronized void dump(PrintWriter pw) {
+        pw.println("IconDecoder:");
+        pw.println("  decodes=" + sDecodes + ", scratchReuses=" + sScratchReuses
+                + ", fullBytes=" + sFullBytes + ", decodedBytes=" + sDecodedBytes);
+    }
+}
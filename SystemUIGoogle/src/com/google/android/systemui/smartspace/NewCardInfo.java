@@ -7,11 +7,10 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
+import com.android.systemui.res.R;
 import com.android.systemui.smartspace.nano.SmartspaceProto;
-import java.io.ByteArrayOutputStream;
 
 public final class NewCardInfo {
     public final SmartspaceProto.SmartspaceUpdate.SmartspaceCard mCard;
@@ -42,7 +41,8 @@ public final class NewCardInfo {
         }
         try {
             if (!TextUtils.isEmpty(this.mCard.icon.uri)) {
-                return MediaStore.Images.Media.getBitmap(context.getContentResolver(), Uri.parse(this.mCard.icon.uri));
+                return IconDecoder.decodeUri(context.getContentResolver(), Uri.parse(this.mCard.icon.uri),
+                        context.getResources().getDimensionPixelSize(R.dimen.header_icon_size));
             }
             if (!TextUtils.isEmpty(this.mCard.icon.gsaResourceName)) {
                 Intent.ShortcutIconResource shortcutIconResource = new Intent.ShortcutIconResource();
@@ -57,13 +57,18 @@ public final class NewCardInfo {
         }
     }
 
-    public SmartspaceProto.CardWrapper toWrapper(Context context) {
+    /**
+     * Builds the wrapper for this card with its icon referenced from {@code iconStore}. The icon
+     * is only written to disk if {@code persistIcon} is set.
+     */
+    public SmartspaceProto.CardWrapper toWrapper(Context context, IconBlobStore iconStore, boolean persistIcon) {
         SmartspaceProto.CardWrapper cardWrapper = new SmartspaceProto.CardWrapper();
         Bitmap retrieveIcon = retrieveIcon(context);
         if (retrieveIcon != null) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            retrieveIcon.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-            cardWrapper.icon = byteArrayOutputStream.toByteArray();
+            String iconBlob = iconStore.put(retrieveIcon, persistIcon);
+            if (iconBlob != null) {
+                cardWrapper.iconBlob = iconBlob;
+            }
         }
         cardWrapper.card = this.mCard;
         cardWrapper.publishTime = this.mPublishTime;
@@ -1,50 +1,207 @@
 package com.google.android.systemui.smartspace;
 
 import android.content.Context;
+import android.os.Handler;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
 import android.util.Log;
+import com.android.internal.annotations.GuardedBy;
 import com.android.systemui.smartspace.nano.SmartspaceProto;
 import com.google.protobuf.nano.MessageNano;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
 
+/**
+ * Persists smartspace cards, one file per key.
+ *
+ * Stores are write-behind: the serialized card is kept in memory and written on the background
+ * handler at most {@link #COALESCE_MS} later, so a burst of cards for the same key costs a
+ * single write of the last one. A card that is byte-for-byte the one already on disk is not
+ * written again. Files are replaced through {@link AtomicFile}, so a crash mid-write leaves the
+ * previous card intact.
+ *
+ * Each file starts with a header of magic, payload length and CRC32 of the payload. Loads read
+ * the whole file into a reused buffer and parse the card straight out of it; a file whose header
+ * does not match its payload, or whose payload does not parse, is renamed with a
+ * {@link #QUARANTINE_SUFFIX} rather than left to be overwritten. Files written before the header
+ * existed are still read.
+ */
 public class ProtoStore {
+    static final long COALESCE_MS = 500;
+    static final String QUARANTINE_SUFFIX = ".corrupt";
+
+    private static final int MAGIC = 0x53504331;
+    private static final int HEADER_SIZE = 12;
+    // Cards are a few kilobytes plus one icon; anything far larger is not a card file.
+    private static final int MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    // Marks a pending delete in mPending; compared by identity.
+    private static final byte[] DELETE = new byte[0];
+
     public final Context mContext;
+    private final Handler mBgHandler;
+    private final Runnable mFlushRunnable = this::flush;
+    // Serializes flushes, reads and quarantines, so a file is only renamed aside while the bad
+    // content that was read is still what is on disk.
+    private final Object mFileLock = new Object();
+    @GuardedBy("mFileLock")
+    private byte[] mReadBuffer = new byte[16 * 1024];
+    @GuardedBy("mFileLock")
+    private final CRC32 mReadCrc = new CRC32();
+
+    @GuardedBy("this")
+    private final ArrayMap<String, byte[]> mPending = new ArrayMap<>();
+    // What is known to be on disk for each key, DELETE if nothing is.
+    @GuardedBy("this")
+    private final ArrayMap<String, byte[]> mWritten = new ArrayMap<>();
 
-    public ProtoStore(Context context) {
+    @GuardedBy("this")
+    private boolean mFlushScheduled;
+
+    @GuardedBy("this")
+    private int mWrites;
+    @GuardedBy("this")
+    private long mBytesWritten;
+    @GuardedBy("this")
+    private int mCoalesced;
+    @GuardedBy("this")
+    private int mUnchanged;
+    @GuardedBy("this")
+    private int mFailures;
+    @GuardedBy("this")
+    private int mLoads;
+    @GuardedBy("this")
+    private int mLegacyLoads;
+    @GuardedBy("this")
+    private int mQuarantined;
+
+    public ProtoStore(Context context, Handler bgHandler) {
         this.mContext = context.getApplicationContext();
+        this.mBgHandler = bgHandler;
     }
 
+    /** Queues {@code cardWrapper} to be written under {@code str}; null deletes the file. */
     public void store(SmartspaceProto.CardWrapper cardWrapper, String str) {
-        try {
-            FileOutputStream openFileOutput = this.mContext.openFileOutput(str, 0);
-            if (cardWrapper != null) {
-                openFileOutput.write(MessageNano.toByteArray(cardWrapper));
-            } else {
-                Log.d("ProtoStore", "deleting " + str);
-                this.mContext.deleteFile(str);
+        byte[] bytes = cardWrapper != null ? MessageNano.toByteArray(cardWrapper) : DELETE;
+        synchronized (this) {
+            byte[] pending = this.mPending.get(str);
+            byte[] current = pending != null ? pending : this.mWritten.get(str);
+            if (current != null && sameContent(current, bytes)) {
+                this.mUnchanged++;
+                return;
             }
-            if (openFileOutput != null) {
-                openFileOutput.close();
+            if (pending != null) {
+                this.mCoalesced++;
+            }
+            this.mPending.put(str, bytes);
+            if (this.mFlushScheduled) {
+                return;
+            }
+            this.mFlushScheduled = true;
+        }
+        this.mBgHandler.postDelayed(this.mFlushRunnable, COALESCE_MS);
+    }
+
+    /** Writes every queued card now. Safe to call from any thread. */
+    public void flush() {
+        // Held across the writes so a concurrent flush cannot put an older card on disk last.
+        synchronized (this.mFileLock) {
+            ArrayMap<String, byte[]> pending;
+            synchronized (this) {
+                this.mFlushScheduled = false;
+                if (this.mPending.isEmpty()) {
+                    return;
+                }
+                pending = new ArrayMap<>(this.mPending);
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                String str = pending.keyAt(i);
+                byte[] bytes = pending.valueAt(i);
+                write(str, bytes);
+                synchronized (this) {
+                    // Entries stay visible to load() until written; keep any newer card queued.
+                    if (this.mPending.get(str) == bytes) {
+                        this.mPending.remove(str);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the key of every stored card starting with {@code prefix}, written or not. */
+    public List<String> keys(String prefix) {
+        ArrayList<String> keys = new ArrayList<>();
+        String[] files = this.mContext.fileList();
+        synchronized (this) {
+            for (int i = 0; i < this.mPending.size(); i++) {
+                String str = this.mPending.keyAt(i);
+                if (str.startsWith(prefix) && this.mPending.valueAt(i) != DELETE) {
+                    keys.add(str);
+                }
+            }
+            for (String str : files) {
+                // Quarantined and AtomicFile temporary files all carry a suffix.
+                if (str.startsWith(prefix) && str.indexOf('.') < 0 && !this.mPending.containsKey(str)) {
+                    keys.add(str);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void write(String str, byte[] bytes) {
+        AtomicFile atomicFile = new AtomicFile(this.mContext.getFileStreamPath(str));
+        if (bytes == DELETE) {
+            Log.d("ProtoStore", "deleting " + str);
+            atomicFile.delete();
+            synchronized (this) {
+                this.mWritten.put(str, DELETE);
+            }
+            return;
+        }
+        FileOutputStream fileOutputStream = null;
+        try {
+            fileOutputStream = atomicFile.startWrite();
+            fileOutputStream.write(header(bytes));
+            fileOutputStream.write(bytes);
+            atomicFile.finishWrite(fileOutputStream);
+            synchronized (this) {
+                this.mWritten.put(str, bytes);
+                this.mWrites++;
+                this.mBytesWritten += HEADER_SIZE + bytes.length;
             }
-        } catch (FileNotFoundException e) {
-            Log.d("ProtoStore", "file does not exist");
         } catch (Exception ex) {
             Log.e("ProtoStore", "unable to write file", ex);
+            atomicFile.failWrite(fileOutputStream);
+            synchronized (this) {
+                this.mWritten.remove(str);
+                this.mFailures++;
+            }
         }
     }
 
     public <T extends MessageNano> boolean load(String str, T t) {
-        File fileStreamPath = this.mContext.getFileStreamPath(str);
+        byte[] pending;
+        synchronized (this) {
+            pending = this.mPending.get(str);
+        }
         try {
-            FileInputStream fileInputStream = new FileInputStream(fileStreamPath);
-            int length = (int) fileStreamPath.length();
-            byte[] bArr = new byte[length];
-            fileInputStream.read(bArr, 0, length);
-            MessageNano.mergeFrom(t, bArr);
-            fileInputStream.close();
-            return true;
+            if (pending != null) {
+                if (pending == DELETE) {
+                    return false;
+                }
+                MessageNano.mergeFrom(t, pending);
+                return true;
+            }
+            return loadFromDisk(str, t);
         } catch (FileNotFoundException e) {
             Log.d("ProtoStore", "no cached data");
             return false;
@@ -53,4 +210,125 @@ public class ProtoStore {
             return false;
         }
     }
+
+    private <T extends MessageNano> boolean loadFromDisk(String str, T t) throws IOException {
+        synchronized (this.mFileLock) {
+            int length;
+            try (FileInputStream in = new AtomicFile(this.mContext.getFileStreamPath(str)).openRead()) {
+                length = readFullyLocked(in);
+            }
+            if (length < 0) {
+                quarantine(str, "file too large");
+                return false;
+            }
+            byte[] buffer = this.mReadBuffer;
+            int offset = 0;
+            int payloadLength = length;
+            boolean legacy = length < HEADER_SIZE || readInt(buffer, 0) != MAGIC;
+            if (!legacy) {
+                payloadLength = readInt(buffer, 4);
+                if (payloadLength != length - HEADER_SIZE) {
+                    quarantine(str, "length " + payloadLength + " does not match file size " + length);
+                    return false;
+                }
+                offset = HEADER_SIZE;
+                this.mReadCrc.reset();
+                this.mReadCrc.update(buffer, offset, payloadLength);
+                if ((int) this.mReadCrc.getValue() != readInt(buffer, 8)) {
+                    quarantine(str, "checksum mismatch");
+                    return false;
+                }
+            }
+            try {
+                // Nano messages copy bytes fields, so nothing keeps a reference to the buffer.
+                MessageNano.mergeFrom(t, buffer, offset, payloadLength);
+            } catch (IOException e) {
+                quarantine(str, e.getMessage());
+                return false;
+            }
+            synchronized (this) {
+                this.mLoads++;
+                if (legacy) {
+                    this.mLegacyLoads++;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Reads {@code in} to the end into mReadBuffer; returns the length, or -1 if too large. */
+    @GuardedBy("mFileLock")
+    private int readFullyLocked(FileInputStream in) throws IOException {
+        long size = in.getChannel().size();
+        if (size > MAX_FILE_SIZE) {
+            return -1;
+        }
+        if (this.mReadBuffer.length < size) {
+            this.mReadBuffer = new byte[(int) size];
+        }
+        int length = 0;
+        while (true) {
+            if (length == this.mReadBuffer.length) {
+                if (length >= MAX_FILE_SIZE) {
+                    return -1;
+                }
+                this.mReadBuffer = Arrays.copyOf(this.mReadBuffer, Math.min(length * 2, MAX_FILE_SIZE));
+            }
+            int read = in.read(this.mReadBuffer, length, this.mReadBuffer.length - length);
+            if (read < 0) {
+                return length;
+            }
+            length += read;
+        }
+    }
+
+    @GuardedBy("mFileLock")
+    private void quarantine(String str, String reason) {
+        Log.w("ProtoStore", "quarantining " + str + ": " + reason);
+        File file = this.mContext.getFileStreamPath(str);
+        File quarantined = this.mContext.getFileStreamPath(str + QUARANTINE_SUFFIX);
+        if (!file.renameTo(quarantined)) {
+            Log.w("ProtoStore", "unable to quarantine " + str);
+        }
+        synchronized (this) {
+            this.mWritten.remove(str);
+            this.mQuarantined++;
+        }
+    }
+
+    private static byte[] header(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        byte[] header = new byte[HEADER_SIZE];
+        writeInt(header, 0, MAGIC);
+        writeInt(header, 4, payload.length);
+        writeInt(header, 8, (int) crc.getValue());
+        return header;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static boolean sameContent(byte[] a, byte[] b) {
+        return a == b || (a != DELETE && b != DELETE && Arrays.equals(a, b));
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("ProtoStore:");
+        pw.println("  pending=" + this.mPending.keySet());
+        pw.println("  writes=" + this.mWrites + ", bytesWritten=" + this.mBytesWritten
+                + ", coalesced=" + this.mCoalesced + ", unchanged=" + this.mUnchanged
+                + ", failures=" + this.mFailures);
+        pw.println("  loads=" + this.mLoads + ", legacyLoads=" + this.mLegacyLoads
+                + ", quarantined=" + this.mQuarantined);
+    }
 }
@@ -20,7 +20,6 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.NonNull;
@@ -91,7 +90,7 @@ public final class SmartSpaceCard {
         return substitute(false);
     }
 
-    public static SmartSpaceCard fromWrapper(Context context, SmartspaceProto.CardWrapper cardWrapper, boolean z) {
+    public static SmartSpaceCard fromWrapper(Context context, SmartspaceProto.CardWrapper cardWrapper, boolean z, IconBlobStore iconStore) {
         Intent intent;
         Bitmap cardIcon;
         try {
@@ -102,15 +101,16 @@ public final class SmartSpaceCard {
                 intent = null;
             }
             byte[] cardIconFromWrapper = cardWrapper.icon;
-            if (cardIconFromWrapper != null) {
-                cardIcon = BitmapFactory.decodeByteArray(cardIconFromWrapper, 0, cardIconFromWrapper.length, null);
+            int dimensionPixelSize = context.getResources().getDimensionPixelSize(R.dimen.header_icon_size);
+            if (!TextUtils.isEmpty(cardWrapper.iconBlob)) {
+                cardIcon = iconStore.get(cardWrapper.iconBlob);
+            } else if (cardIconFromWrapper != null && cardIconFromWrapper.length > 0) {
+                // Written before icons moved to IconBlobStore.
+                cardIcon = IconDecoder.decodeByteArray(cardIconFromWrapper, 0, cardIconFromWrapper.length, dimensionPixelSize);
             } else {
                 cardIcon = null;
             }
-            int dimensionPixelSize = context.getResources().getDimensionPixelSize(R.dimen.header_icon_size);
-            if (cardIcon != null && cardIcon.getHeight() > dimensionPixelSize) {
-                cardIcon = Bitmap.createScaledBitmap(cardIcon, (dimensionPixelSize / cardIcon.getHeight()) * cardIcon.getWidth(), dimensionPixelSize, true);
-            }
+            cardIcon = IconDecoder.scaleToHeight(cardIcon, dimensionPixelSize);
             return new SmartSpaceCard(context, cardWrapper.card, intent, cardIcon, cardWrapper.publishTime);
         } catch (Exception e) {
             Log.e("SmartspaceCard", "from proto", e);
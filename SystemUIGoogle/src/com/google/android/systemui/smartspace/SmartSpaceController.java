@@ -22,10 +22,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.ArraySet;
 import android.util.KeyValueListParser;
 import android.util.Log;
 import androidx.annotation.NonNull;
@@ -50,6 +52,8 @@ import java.util.stream.Stream;
 public class SmartSpaceController implements Dumpable {
     static final String TAG = "SmartSpaceController";
     static final boolean DEBUG = Log.isLoggable(TAG, 3);
+    // Blobs are only collected once card updates have settled.
+    private static final long ICON_GC_DELAY_MS = 60000;
     public final AlarmManager mAlarmManager;
     public boolean mAlarmRegistered;
     public final Handler mBackgroundHandler;
@@ -60,6 +64,8 @@ public class SmartSpaceController implements Dumpable {
     public boolean mHidePrivateData;
     public boolean mHideWorkData;
     public final ProtoStore mStore;
+    public final IconBlobStore mIconStore;
+    private final Runnable mIconGcRunnable = this::collectIconBlobs;
     public final ArrayList<SmartSpaceUpdateListener> mListeners = new ArrayList<>();
     public final AlarmManager.OnAlarmListener mExpireAlarmAction = () -> {
         onExpire(false);
@@ -78,36 +84,53 @@ public class SmartSpaceController implements Dumpable {
         }
     };
     public final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    // Main thread only. Stored cards are read on first use instead of during injection.
+    private boolean mDataLoadRequested;
+    private long mConstructionMicros;
+    private long mFirstLoadMicros = -1;
+    private long mFirstPublishDelayMs = -1;
 
     @Inject
     public SmartSpaceController(Context context, KeyguardUpdateMonitor keyguardUpdateMonitor, @Background Handler backgroundHandler, AlarmManager alarmManager, BroadcastSender broadcastSender, DumpManager dumpManager) {
+        long constructionStartNanos = SystemClock.elapsedRealtimeNanos();
         this.mContext = context;
-        this.mStore = new ProtoStore(context);
-        new HandlerThread("smartspace-background").start();
         this.mBackgroundHandler = backgroundHandler;
+        this.mStore = new ProtoStore(context, backgroundHandler);
+        this.mIconStore = new IconBlobStore(context);
         this.mCurrentUserId = UserHandle.myUserId();
         this.mAlarmManager = alarmManager;
         this.mBroadcastSender = broadcastSender;
         this.mData = new SmartSpaceData();
         if (isSmartSpaceDisabledByExperiments()) {
+            this.mDataLoadRequested = true;
             return;
         }
         keyguardUpdateMonitor.registerCallback(this.mKeyguardMonitorCallback);
-        reloadData();
         onGsaChanged();
         context.registerReceiver(this.mBroadcastReceiver, GSAIntents.getGsaPackageFilter("android.intent.action.PACKAGE_ADDED", "android.intent.action.PACKAGE_CHANGED", "android.intent.action.PACKAGE_REMOVED", "android.intent.action.PACKAGE_DATA_CLEARED"), 2);
         IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction("android.intent.action.USER_SWITCHED");
         intentFilter.addAction("android.intent.action.USER_UNLOCKED");
+        intentFilter.addAction(Intent.ACTION_SHUTDOWN);
         context.registerReceiver(new UserSwitchReceiver(), intentFilter);
         context.registerReceiver(new SmartSpaceBroadcastReceiver(this, this.mBroadcastSender), new IntentFilter("com.google.android.apps.nexuslauncher.UPDATE_SMARTSPACE"), "android.permission.CAPTURE_AUDIO_HOTWORD", this.mUiHandler, 2);
         dumpManager.registerDumpable(SmartSpaceController.class.getName(), this);
+        this.mConstructionMicros = (SystemClock.elapsedRealtimeNanos() - constructionStartNanos) / 1000;
+    }
+
+    private void ensureDataLoaded() {
+        Assert.isMainThread();
+        if (this.mDataLoadRequested) {
+            return;
+        }
+        this.mDataLoadRequested = true;
+        reloadData();
     }
 
     private SmartSpaceCard loadSmartSpaceData(boolean isCurrent) {
         SmartspaceProto.CardWrapper wrapper = new SmartspaceProto.CardWrapper();
         if (this.mStore.load("smartspace_" + this.mCurrentUserId + "_" + isCurrent, wrapper)) {
-            return SmartSpaceCard.fromWrapper(this.mContext, wrapper, !isCurrent);
+            return SmartSpaceCard.fromWrapper(this.mContext, wrapper, !isCurrent, this.mIconStore);
         }
         return null;
     }
@@ -121,6 +144,8 @@ public class SmartSpaceController implements Dumpable {
             Log.d(str, sb.toString());
         }
         if (newCardInfo != null) {
+            // Queued ahead of the card, so the stored cards cannot overwrite it.
+            ensureDataLoaded();
             if (newCardInfo.getUserId() != mCurrentUserId) {
                 if (DEBUG) {
                     StringBuilder sb2 = new StringBuilder();
@@ -135,7 +160,7 @@ public class SmartSpaceController implements Dumpable {
             mBackgroundHandler.post(new Runnable() {
                 @Override
                 public final void run() {
-                    final SmartspaceProto.CardWrapper wrapper = newCardInfo.toWrapper(mContext);
+                    final SmartspaceProto.CardWrapper wrapper = newCardInfo.toWrapper(mContext, mIconStore, !mHidePrivateData);
                     if (!mHidePrivateData) {
                         ProtoStore protoStore = mStore;
                         StringBuilder sb = new StringBuilder();
@@ -144,12 +169,13 @@ public class SmartSpaceController implements Dumpable {
                         sb.append("_");
                         sb.append(newCardInfo.isPrimary());
                         protoStore.store(wrapper, sb.toString());
+                        scheduleIconGc();
                     }
                     mUiHandler.post(new Runnable() {
                         @Override
                         public final void run() {
                             SmartSpaceCard smartSpaceCard = newCardInfo.shouldDiscard() ? null :
-                                SmartSpaceCard.fromWrapper(mContext, wrapper, newCardInfo.isPrimary());
+                                SmartSpaceCard.fromWrapper(mContext, wrapper, newCardInfo.isPrimary(), mIconStore);
                             if (newCardInfo.isPrimary()) {
                                 mData.mCurrentCard = smartSpaceCard;
                             } else {
@@ -168,6 +194,24 @@ public class SmartSpaceController implements Dumpable {
     private void clearStore() {
         this.mStore.store(null, "smartspace_" + this.mCurrentUserId + "_true");
         this.mStore.store(null, "smartspace_" + this.mCurrentUserId + "_false");
+        scheduleIconGc();
+    }
+
+    private void scheduleIconGc() {
+        this.mBackgroundHandler.removeCallbacks(this.mIconGcRunnable);
+        this.mBackgroundHandler.postDelayed(this.mIconGcRunnable, ICON_GC_DELAY_MS);
+    }
+
+    /** Deletes the icon blobs that no stored card of any user refers to. */
+    private void collectIconBlobs() {
+        ArraySet<String> live = new ArraySet<>();
+        for (String key : this.mStore.keys("smartspace_")) {
+            SmartspaceProto.CardWrapper wrapper = new SmartspaceProto.CardWrapper();
+            if (this.mStore.load(key, wrapper) && !TextUtils.isEmpty(wrapper.iconBlob)) {
+                live.add(wrapper.iconBlob);
+            }
+        }
+        this.mIconStore.gc(live);
     }
 
     private void update() {
@@ -238,10 +282,28 @@ public class SmartSpaceController implements Dumpable {
         }
     }
 
+    /** Reads the stored cards on the background handler and publishes them on the main thread. */
     public void reloadData() {
-        this.mData.mCurrentCard = loadSmartSpaceData(true);
-        this.mData.mWeatherCard = loadSmartSpaceData(false);
-        update();
+        final int userId = this.mCurrentUserId;
+        final long requestMs = SystemClock.elapsedRealtime();
+        this.mBackgroundHandler.post(() -> {
+            long loadStartNanos = SystemClock.elapsedRealtimeNanos();
+            SmartSpaceCard currentCard = loadSmartSpaceData(true);
+            SmartSpaceCard weatherCard = loadSmartSpaceData(false);
+            long loadMicros = (SystemClock.elapsedRealtimeNanos() - loadStartNanos) / 1000;
+            this.mUiHandler.post(() -> {
+                if (this.mFirstLoadMicros < 0) {
+                    this.mFirstLoadMicros = loadMicros;
+                    this.mFirstPublishDelayMs = SystemClock.elapsedRealtime() - requestMs;
+                }
+                if (userId != this.mCurrentUserId) {
+                    return;
+                }
+                this.mData.mCurrentCard = currentCard;
+                this.mData.mWeatherCard = weatherCard;
+                update();
+            });
+        });
     }
 
     private boolean isSmartSpaceDisabledByExperiments() {
@@ -267,10 +329,16 @@ public class SmartSpaceController implements Dumpable {
         pw.println("  weather " + loadSmartSpaceData(false));
         pw.println("  current " + loadSmartSpaceData(true));
         pw.println("disabled by experiment: " + isSmartSpaceDisabledByExperiments());
+        pw.println("startup: constructionUs=" + this.mConstructionMicros + ", firstLoadUs="
+                + this.mFirstLoadMicros + ", firstPublishDelayMs=" + this.mFirstPublishDelayMs);
+        this.mStore.dump(pw);
+        this.mIconStore.dump(pw);
+        IconDecoder.dump(pw);
     }
 
     public void addListener(SmartSpaceUpdateListener smartSpaceUpdateListener) {
         Assert.isMainThread();
+        ensureDataLoaded();
         this.mListeners.add(smartSpaceUpdateListener);
         if (this.mData != null && smartSpaceUpdateListener != null) {
             smartSpaceUpdateListener.onSmartSpaceUpdated(this.mData);
@@ -294,7 +362,12 @@ public class SmartSpaceController implements Dumpable {
             if (SmartSpaceController.DEBUG) {
                 Log.d(SmartSpaceController.TAG, "Switching user: " + intent.getAction() + " uid: " + UserHandle.myUserId());
             }
+            if (Intent.ACTION_SHUTDOWN.equals(intent.getAction())) {
+                SmartSpaceController.this.mStore.flush();
+                return;
+            }
             if (intent.getAction().equals("android.intent.action.USER_SWITCHED")) {
+                SmartSpaceController.this.mBackgroundHandler.post(SmartSpaceController.this.mStore::flush);
                 SmartSpaceController.this.mCurrentUserId = intent.getIntExtra("android.intent.extra.user_handle", -1);
                 SmartSpaceController.this.mData.clear();
                 SmartSpaceController.this.onExpire(true);